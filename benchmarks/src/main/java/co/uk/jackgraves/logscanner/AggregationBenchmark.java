@@ -0,0 +1,65 @@
+package co.uk.jackgraves.logscanner;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording hits, and merging the per-chunk aggregators of a parallel scan back together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+    private static final int HITS = 100_000;
+    private static final int CHUNKS = 64;
+
+    @Param({"10", "1000"})
+    public int urls;
+
+    @Param({"false", "true"})
+    public boolean verbose;
+
+    private String[] hitUrls;
+    private String line;
+    private ResultAggregator[] chunks;
+
+    @Setup
+    public void generate() {
+        hitUrls = new String[urls];
+        for (int i = 0; i < urls; i++) {
+            hitUrls[i] = "https://confluence.atlassian.com/kb/problem-" + i + ".html";
+        }
+        line = new LogGenerator(1).lines(1).get(0);
+        chunks = new ResultAggregator[CHUNKS];
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            chunks[chunk] = new ResultAggregator(verbose);
+            for (int i = 0; i < HITS / CHUNKS; i++) {
+                chunks[chunk].add(hitUrls[(chunk * 31 + i) % urls], line, i + 1);
+            }
+        }
+    }
+
+    @Benchmark
+    public ResultAggregator add() {
+        ResultAggregator results = new ResultAggregator(verbose);
+        for (int i = 0; i < HITS; i++) {
+            results.add(hitUrls[i % urls], line, i + 1);
+        }
+        return results;
+    }
+
+    @Benchmark
+    public ResultAggregator merge() {
+        ResultAggregator results = new ResultAggregator(verbose);
+        long offset = 0;
+        for (ResultAggregator chunk : chunks) {
+            results.merge(chunk, offset);
+            offset += HITS / CHUNKS;
+        }
+        return results;
+    }
+}
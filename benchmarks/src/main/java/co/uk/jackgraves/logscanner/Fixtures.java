@@ -0,0 +1,68 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.xml.DefinitionReader;
+import co.uk.jackgraves.logscanner.xml.RegExItem;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Definitions and logs shared by the benchmarks.
+ */
+final class Fixtures {
+    static final String SAMPLE_DEFINITIONS = "classpath:definitions/sample_regex.xml";
+    static final int BATCH_LINES = 64 * 1024;
+
+    private Fixtures() {
+    }
+
+    /**
+     * Reads a definition file, either checked in ("classpath:...") or on disk such as a downloaded jira_regex_v2.xml.
+     */
+    static Map<String, Pattern> definitions(String location) throws IOException, XMLStreamException {
+        try (InputStream in = location.startsWith("classpath:")
+                ? Fixtures.class.getClassLoader().getResourceAsStream(location.substring("classpath:".length()))
+                : new FileInputStream(location)) {
+            if (in == null) {
+                throw new IOException("Definitions not found: " + location);
+            }
+            List<RegExItem> items = DefinitionReader.read(in).regexItems;
+            Map<String, Pattern> patterns = new LinkedHashMap<>();
+            for (RegExItem item : items) {
+                patterns.put(item.URL, Pattern.compile(item.regex));
+            }
+            return patterns;
+        }
+    }
+
+    /**
+     * Returns a generated log of the given size, such as "10MB", written to the temporary directory the first time
+     * it is asked for and reused by later forks and runs.
+     */
+    static File log(String size) throws IOException {
+        long bytes = LogGenerator.parseSize(size);
+        File file = new File(System.getProperty("java.io.tmpdir"), "logscanner-benchmark-" + size + ".log");
+        if (file.length() < bytes) {
+            File partial = new File(file.getPath() + ".tmp");
+            new LogGenerator(1).write(partial, bytes);
+            Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    /**
+     * One batch of generated lines, the size the scanner matches in one go.
+     */
+    static List<String> lines() {
+        return new LogGenerator(1).lines(BATCH_LINES);
+    }
+}
@@ -0,0 +1,171 @@
+package co.uk.jackgraves.logscanner;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes a synthetic atlassian-jira.log: mostly ordinary INFO and WARN lines, ERROR lines followed by stack traces,
+ * and now and then a line that one of the sample definitions matches. The same seed always gives the same log.
+ *
+ * Run it on its own to produce a log for manual timing: LogGenerator &lt;file&gt; &lt;size, such as 10MB or 1GB&gt;
+ */
+public class LogGenerator {
+    private static final long START = 1525132800000L; // 2018-05-01 00:00:00 UTC
+    private static final int PROBLEM_RATE = 2000;
+    private static final int ERROR_RATE = 200;
+
+    private static final String[] THREADS = {
+            "http-nio-8080-exec-1", "http-nio-8080-exec-17", "Caesium-1-3", "localhost-startStop-1",
+            "ThreadPoolAsyncTaskExecutor::Thread 24", "JiraTaskExecutionThread-2", "scheduler_Worker-4"
+    };
+    private static final String[] LOGGERS = {
+            "c.a.jira.index.AccumulatingIndexer", "c.a.j.plugin.user.DefaultUserManager", "c.a.plugin.manager.DefaultPluginManager",
+            "c.a.jira.cluster.DefaultClusterManager", "c.a.j.issue.search.SearchHandlerManager", "c.a.jira.web.filters.ActionCleanupDelayFilter"
+    };
+    private static final String[] MESSAGES = {
+            "Indexed issue %d in %d ms", "User %d logged in from 10.0.%d.%d", "Plugin system started in %d ms with %d plugins",
+            "Cache flush of %d entries took %d ms", "Request /rest/api/2/issue/%d completed in %d ms", "Mail queue contains %d items, flushed %d"
+    };
+    private static final String[] FRAMES = {
+            "com.atlassian.jira.issue.index.DefaultIndexManager.reIndex(DefaultIndexManager.java:%d)",
+            "com.atlassian.jira.web.action.issue.ViewIssue.doExecute(ViewIssue.java:%d)",
+            "org.apache.catalina.core.ApplicationFilterChain.internalDoFilter(ApplicationFilterChain.java:%d)",
+            "com.atlassian.gzipfilter.GzipFilter.doFilter(GzipFilter.java:%d)",
+            "org.ofbiz.core.entity.GenericDelegator.findByAnd(GenericDelegator.java:%d)",
+            "java.lang.Thread.run(Thread.java:%d)"
+    };
+    private static final String[] PROBLEMS = {
+            "sun.security.validator.ValidatorException: PKIX path building failed",
+            "java.lang.OutOfMemoryError: Java heap space",
+            "java.lang.OutOfMemoryError: GC overhead limit exceeded",
+            "Cannot get a connection, pool error Timeout waiting for idle object",
+            "org.apache.lucene.store.LockObtainFailedException: Lock obtain timed out: NativeFSLock@/var/atlassian/jira/caches/indexes/issues/write.lock",
+            "Unable to acquire JDBC Connection",
+            "ClientAbortException: java.io.IOException: Broken pipe",
+            "java.net.SocketTimeoutException: Read timed out",
+            "Cluster lock 'com.atlassian.jira.upgrade' could not be acquired",
+            "Deadlock found when trying to get lock; try restarting transaction",
+            "java.io.IOException: Too many open files",
+            "Could not find a valid SMTP Mail Server",
+            "LDAP: error code 49 - 80090308: LdapErr: DSID-0C0903A9, comment: AcceptSecurityContext error, data 52e, v1db1",
+            "org.hibernate.StaleObjectStateException: Row was updated or deleted by another transaction",
+            "Unable to start plugin: com.example.jira.plugin",
+            "The indexing operation timed out after 600 seconds",
+            "Unknown column 'ISSUENUM' in 'field list'",
+            "All threads (200) are currently busy, waiting. Increase maxThreads (200) or check the servlet status"
+    };
+
+    private final Random random;
+    private long time = START;
+
+    public LogGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: LogGenerator <file> <size, such as 10MB or 1GB>");
+            System.exit(1);
+        }
+        new LogGenerator(1).write(new File(args[0]), parseSize(args[1]));
+    }
+
+    /**
+     * Parses a size such as "512KB", "10MB" or "1GB" into bytes.
+     */
+    public static long parseSize(String size) {
+        String upper = size.trim().toUpperCase();
+        long unit = 1;
+        if (upper.endsWith("KB")) {
+            unit = 1024L;
+        } else if (upper.endsWith("MB")) {
+            unit = 1024L * 1024;
+        } else if (upper.endsWith("GB")) {
+            unit = 1024L * 1024 * 1024;
+        }
+        String digits = unit == 1 ? upper : upper.substring(0, upper.length() - 2);
+        return Long.parseLong(digits.trim()) * unit;
+    }
+
+    /**
+     * Writes at least the given number of bytes of log, stopping at the end of a line.
+     */
+    public void write(File file, long size) throws IOException {
+        try (CountingWriter out = new CountingWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16))) {
+            while (out.written < size) {
+                for (String line : nextRecord()) {
+                    out.write(line);
+                    out.write('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates the given number of lines in memory.
+     */
+    public List<String> lines(int count) {
+        List<String> lines = new ArrayList<>(count);
+        while (lines.size() < count) {
+            for (String line : nextRecord()) {
+                if (lines.size() < count) {
+                    lines.add(line);
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * One log record: a single line, or an ERROR line and its stack trace.
+     */
+    private List<String> nextRecord() {
+        List<String> record = new ArrayList<>();
+        time += random.nextInt(250);
+        String prefix = LogTimestamp.format(time) + String.format(",%03d ", time % 1000) + pick(THREADS);
+        int roll = random.nextInt(PROBLEM_RATE);
+        if (roll == 0) {
+            record.add(prefix + " ERROR admin 123x" + random.nextInt(100000) + "x1 1a2b3c4 10.0.0.1 /secure/Dashboard.jspa [" + pick(LOGGERS) + "] " + pick(PROBLEMS));
+        } else if (roll < PROBLEM_RATE / ERROR_RATE) {
+            record.add(prefix + " ERROR      [" + pick(LOGGERS) + "] Exception while processing request");
+            record.add("java.lang.IllegalStateException: Unexpected state " + random.nextInt(1000));
+            for (int i = 3 + random.nextInt(25); i > 0; i--) {
+                record.add("\tat " + String.format(pick(FRAMES), random.nextInt(2000)));
+            }
+        } else {
+            String level = random.nextInt(10) == 0 ? " WARN " : " INFO ";
+            record.add(prefix + level + "[" + pick(LOGGERS) + "] " + String.format(pick(MESSAGES), random.nextInt(100000), random.nextInt(1000), random.nextInt(256)));
+        }
+        return record;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    /**
+     * Counts the chars written, which is the byte count as the generated log is all ASCII.
+     */
+    private static class CountingWriter extends FilterWriter {
+        private long written;
+
+        CountingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            super.write(c);
+            written++;
+        }
+
+        @Override
+        public void write(String str) throws IOException {
+            out.write(str);
+            written += str.length();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.regex.DefinitionMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Matching a batch of lines against a definition set: every pattern on every line, as the scanner originally did,
+ * against the prefiltered {@link DefinitionMatcher} with each engine.
+ *
+ * Pass a downloaded Hercules file with -p definitions=/path/to/jira_regex_v2.xml to measure a real definition set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchBenchmark {
+    @Param({Fixtures.SAMPLE_DEFINITIONS})
+    public String definitions;
+
+    private List<String> lines;
+    private Pattern[] patterns;
+    private DefinitionMatcher regex;
+    private DefinitionMatcher dfa;
+
+    @Setup
+    public void load() throws Exception {
+        Map<String, Pattern> regularExpressions = Fixtures.definitions(definitions);
+        lines = Fixtures.lines();
+        patterns = regularExpressions.values().toArray(new Pattern[0]);
+        regex = new DefinitionMatcher(regularExpressions, DefinitionMatcher.Engine.REGEX);
+        dfa = new DefinitionMatcher(regularExpressions, DefinitionMatcher.Engine.DFA);
+    }
+
+    @Benchmark
+    public int everyPattern() {
+        int hits = 0;
+        for (String line : lines) {
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(line).find()) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    @Benchmark
+    public int regexEngine() {
+        return match(regex);
+    }
+
+    @Benchmark
+    public int dfaEngine() {
+        return match(dfa);
+    }
+
+    private int match(DefinitionMatcher matcher) {
+        int[] hits = new int[1];
+        for (String line : lines) {
+            matcher.match(line, url -> hits[0]++);
+        }
+        return hits[0];
+    }
+}
@@ -0,0 +1,51 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.regex.DefinitionMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One batch through the sequential and the parallel (-stream) parse, results included. The short batch is too small
+ * to split by line alone, so the parallel parse also splits it by pattern.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({Fixtures.SAMPLE_DEFINITIONS})
+    public String definitions;
+
+    @Param({"false", "true"})
+    public boolean verbose;
+
+    @Param({"65536", "256"})
+    public int lineCount;
+
+    private List<String> lines;
+    private DefinitionMatcher matcher;
+
+    @Setup
+    public void load() throws Exception {
+        lines = Fixtures.lines().subList(0, lineCount);
+        matcher = new DefinitionMatcher(Fixtures.definitions(definitions));
+    }
+
+    @Benchmark
+    public ResultAggregator parseLog() {
+        ResultAggregator results = new ResultAggregator(verbose);
+        LogScanner.parseLog(lines, i -> i + 1, matcher, results);
+        return results;
+    }
+
+    @Benchmark
+    public ResultAggregator parseLogStream() {
+        ResultAggregator results = new ResultAggregator(verbose);
+        LogScanner.parseLogStream(lines, i -> i + 1, matcher, results);
+        return results;
+    }
+}
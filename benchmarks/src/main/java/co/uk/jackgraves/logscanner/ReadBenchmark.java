@@ -0,0 +1,57 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.io.LineBatchReader;
+import co.uk.jackgraves.logscanner.io.MappedLogReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reading a generated log into lines, through the batch reader used by default and -stream, and through the
+ * memory-mapped chunks used by -mmap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadBenchmark {
+    @Param({"10MB", "1GB"})
+    public String size;
+
+    private File log;
+
+    @Setup
+    public void generate() throws IOException {
+        log = Fixtures.log(size);
+    }
+
+    @Benchmark
+    public long batchReader() {
+        long lines = 0;
+        try (LineBatchReader reader = new LineBatchReader(log.getPath())) {
+            List<String> batch;
+            while ((batch = reader.next()) != null) {
+                lines += batch.size();
+            }
+        }
+        return lines;
+    }
+
+    @Benchmark
+    public long mappedChunks() throws IOException {
+        AtomicLong chars = new AtomicLong();
+        long lines = 0;
+        try (MappedLogReader reader = new MappedLogReader(log.getPath())) {
+            for (MappedLogReader.Chunk chunk : reader.split(1)) {
+                lines += chunk.forEachLine((line, index) -> chars.addAndGet(line.length()));
+            }
+        }
+        return lines + chars.get();
+    }
+}
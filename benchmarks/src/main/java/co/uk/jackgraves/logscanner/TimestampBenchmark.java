@@ -0,0 +1,43 @@
+package co.uk.jackgraves.logscanner;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting the timestamp of every line in a batch, as verbose mode does for each hit and -events does to find
+ * where records start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampBenchmark {
+    private List<String> lines;
+
+    @Setup
+    public void generate() {
+        lines = Fixtures.lines();
+    }
+
+    @Benchmark
+    public long parse() {
+        long sum = 0;
+        for (String line : lines) {
+            sum += LogTimestamp.parse(line);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long parseAtStart() {
+        long sum = 0;
+        for (String line : lines) {
+            sum += LogTimestamp.parseAt(line, 0);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,200 @@
+package co.uk.jackgraves.logscanner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * How far a log has been scanned, saved between runs so that a rescan only reads what was appended since.
+ *
+ * Besides the offset, a checkpoint records what is needed to tell whether it still applies: the identity of the
+ * file, a checksum of the bytes just before the offset (which changes if the log was truncated or rotated and
+ * has grown back past the old offset), a checksum of the definition XML files and the scan settings that affect the
+ * results. The results found so far, including the lines on which a definition timed out, are stored with it so the
+ * report stays complete.
+ */
+public class Checkpoint {
+    private static final int VERSION = 3;
+    private static final int TAIL_SIZE = 4096;
+
+    private final String fileKey;
+    private final long offset;
+    private final long tailChecksum;
+    private final long definitionChecksum;
+    private final boolean events;
+    private final ResultAggregator results;
+
+    private Checkpoint(String fileKey, long offset, long tailChecksum, long definitionChecksum, boolean events, ResultAggregator results) {
+        this.fileKey = fileKey;
+        this.offset = offset;
+        this.tailChecksum = tailChecksum;
+        this.definitionChecksum = definitionChecksum;
+        this.events = events;
+        this.results = results;
+    }
+
+    /**
+     * Records that the log has been scanned up to the given offset, with the results found so far.
+     */
+    public static Checkpoint capture(String location, long offset, List<File> definitions, boolean events, ResultAggregator results) throws IOException {
+        Path path = Paths.get(location);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Checkpoint(fileKey(path), offset, tailChecksum(channel, offset), DataFiles.checksum(definitions), events, results);
+        }
+    }
+
+    /**
+     * Returns the saved checkpoint, or null if there is none or it cannot be read.
+     */
+    public static Checkpoint load(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            String fileKey = DataFiles.readString(in);
+            long offset = in.readLong();
+            long tailChecksum = in.readLong();
+            long definitionChecksum = in.readLong();
+            boolean events = in.readBoolean();
+            ResultAggregator results = new ResultAggregator(in.readBoolean());
+            results.countLines(in.readLong());
+            for (int i = in.readInt(); i > 0; i--) {
+                results.restore(new ResultSummary(DataFiles.readString(in), in.readLong(), DataFiles.readString(in), DataFiles.readString(in), in.readLong(), DataFiles.readString(in), DataFiles.readString(in), in.readLong()));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                results.restore(new Result(DataFiles.readString(in), DataFiles.readString(in), DataFiles.readString(in), in.readLong(), in.readLong()));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                results.restoreTimeout(new Result(DataFiles.readString(in), DataFiles.readString(in), DataFiles.readString(in), in.readLong(), in.readLong()));
+            }
+            return new Checkpoint(fileKey, offset, tailChecksum, definitionChecksum, events, results);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the checkpoint to a temporary file and moves it into place, so an interrupted run never leaves
+     * a half-written checkpoint behind.
+     */
+    public void save(File file) throws IOException {
+        Path temporary = DataFiles.temporaryFile(file);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(VERSION);
+                DataFiles.writeString(out, fileKey);
+                out.writeLong(offset);
+                out.writeLong(tailChecksum);
+                out.writeLong(definitionChecksum);
+                out.writeBoolean(events);
+                out.writeBoolean(results.isVerbose());
+                out.writeLong(results.getLineCount());
+                out.writeInt(results.getSummaries().size());
+                for (ResultSummary summary : results.getSummaries()) {
+                    DataFiles.writeString(out, summary.getUrl());
+                    out.writeLong(summary.getCount());
+                    DataFiles.writeString(out, summary.getFirstSource());
+                    DataFiles.writeString(out, summary.getFirstLine());
+                    out.writeLong(summary.getFirstLineNumber());
+                    DataFiles.writeString(out, summary.getLastSource());
+                    DataFiles.writeString(out, summary.getLastLine());
+                    out.writeLong(summary.getLastLineNumber());
+                }
+                writeResults(out, results.getOccurrences());
+                writeResults(out, results.getTimeouts());
+            }
+            DataFiles.replace(temporary, file);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeResults(DataOutputStream out, List<Result> results) throws IOException {
+        out.writeInt(results.size());
+        for (Result result : results) {
+            DataFiles.writeString(out, result.getUrl());
+            DataFiles.writeString(out, result.getSource());
+            DataFiles.writeString(out, result.getLogLine());
+            out.writeLong(result.getTimestamp());
+            out.writeLong(result.getLineNumber());
+        }
+    }
+
+    /**
+     * Returns null if scanning can resume from this checkpoint, otherwise the reason it cannot.
+     */
+    public String checkResume(String location, List<File> definitions, boolean verbose, boolean events) throws IOException {
+        Path path = Paths.get(location);
+        if (!Objects.equals(fileKey, fileKey(path))) {
+            return "log file has been rotated or replaced";
+        }
+        if (definitionChecksum != DataFiles.checksum(definitions)) {
+            return "definitions have changed";
+        }
+        if (verbose != results.isVerbose() || events != this.events) {
+            return "scan options have changed";
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < offset || tailChecksum(channel, offset) != tailChecksum) {
+                return "log file has been truncated";
+            }
+        }
+        return null;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public ResultAggregator getResults() {
+        return results;
+    }
+
+    /**
+     * Offset just after the last complete line, so that a line still being written is left for the next run.
+     */
+    public static long endOfLastLine(String location) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(TAIL_SIZE);
+            long end = channel.size();
+            while (end > 0) {
+                long start = Math.max(0, end - TAIL_SIZE);
+                buffer.clear();
+                buffer.limit((int) (end - start));
+                channel.read(buffer, start);
+                for (int i = buffer.position() - 1; i >= 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        return start + i + 1;
+                    }
+                }
+                end = start;
+            }
+            return 0;
+        }
+    }
+
+    private static String fileKey(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        // fileKey is the device and inode on Unix; elsewhere fall back to the creation time
+        return attributes.fileKey() != null ? attributes.fileKey().toString() : attributes.creationTime().toString();
+    }
+
+    private static long tailChecksum(FileChannel channel, long offset) throws IOException {
+        long start = Math.max(0, offset - TAIL_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate((int) (offset - start));
+        while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) > 0) {
+            // keep reading until the tail is complete
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        return crc.getValue();
+    }
+}
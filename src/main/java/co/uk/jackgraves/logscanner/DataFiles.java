@@ -0,0 +1,70 @@
+package co.uk.jackgraves.logscanner;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * What the files kept between runs have in common: nullable strings and the checksums that tell whether the files
+ * they were made from have changed, and replacing them in one step.
+ */
+final class DataFiles {
+    private DataFiles() {
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(Files.readAllBytes(file.toPath()));
+        return crc.getValue();
+    }
+
+    /**
+     * One checksum over all the files in order, the same as {@link #checksum(File)} for a single file.
+     */
+    static long checksum(List<File> files) throws IOException {
+        CRC32 crc = new CRC32();
+        for (File file : files) {
+            crc.update(Files.readAllBytes(file.toPath()));
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Creates an empty file of its own beside the target, to be written and then moved over the target with
+     * {@link #replace}. Its name is unique, so processes writing the same target at once never share one.
+     */
+    static Path temporaryFile(File target) throws IOException {
+        return Files.createTempFile(target.getAbsoluteFile().getParentFile().toPath(), target.getName() + ".", ".tmp");
+    }
+
+    static void replace(Path temporary, File target) throws IOException {
+        Files.move(temporary, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
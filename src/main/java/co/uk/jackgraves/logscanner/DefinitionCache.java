@@ -0,0 +1,73 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.xml.RegExItem;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The entries of a definition file in a compact binary form, saved next to the XML after it has been parsed once.
+ * Later runs read it with a plain DataInputStream instead of loading an XML parser at all, as long as the checksum
+ * of the XML it was made from still matches.
+ */
+public final class DefinitionCache {
+    private static final int VERSION = 1;
+
+    private DefinitionCache() {
+    }
+
+    /**
+     * Returns the cached entries, or null if there is no cache, it was made from a different XML or cannot be read.
+     */
+    public static List<RegExItem> load(File cache, long xmlChecksum) {
+        if (!cache.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache)))) {
+            if (in.readInt() != VERSION || in.readLong() != xmlChecksum) {
+                return null;
+            }
+            int count = in.readInt();
+            List<RegExItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                RegExItem item = new RegExItem();
+                item.pageName = DataFiles.readString(in);
+                item.regex = DataFiles.readString(in);
+                item.URL = DataFiles.readString(in);
+                item.Id = DataFiles.readString(in);
+                item.sourceID = DataFiles.readString(in);
+                items.add(item);
+            }
+            return items;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache to a temporary file and moves it into place, so a reader never sees half of it.
+     */
+    public static void save(File cache, long xmlChecksum, List<RegExItem> items) throws IOException {
+        Path temporary = DataFiles.temporaryFile(cache);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(VERSION);
+                out.writeLong(xmlChecksum);
+                out.writeInt(items.size());
+                for (RegExItem item : items) {
+                    DataFiles.writeString(out, item.pageName);
+                    DataFiles.writeString(out, item.regex);
+                    DataFiles.writeString(out, item.URL);
+                    DataFiles.writeString(out, item.Id);
+                    DataFiles.writeString(out, item.sourceID);
+                }
+            }
+            DataFiles.replace(temporary, cache);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package co.uk.jackgraves.logscanner;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The directory downloaded definition files are kept in.
+ *
+ * A file is used as it is until it is older than the TTL, then revalidated with the ETag and Last-Modified its
+ * server sent (kept in a ".meta" file beside it), so an unchanged file costs a 304 rather than a download. Downloads
+ * are written to a temporary file of their own and moved into place, so an interrupted one never leaves a truncated
+ * XML behind, and runs refreshing the same file at once do not write into each other's download.
+ * Offline, the files are always used as they are and nothing is fetched.
+ */
+public class DefinitionStore {
+    private static final int TIMEOUT_MILLIS = 30000;
+    private static final int MAX_FETCHES = 8;
+
+    private final File directory;
+    private final long ttlMillis;
+    private final boolean offline;
+
+    public enum Status {
+        /** Younger than the TTL, or offline; not checked. */
+        CACHED,
+        /** The server said the file has not changed. */
+        UNCHANGED,
+        DOWNLOADED,
+        /** Could not be checked or fetched, so the copy already in the store is used. */
+        STALE,
+        /** Could not be fetched and there is no copy in the store. */
+        MISSING
+    }
+
+    public DefinitionStore(File directory, long ttlMillis, boolean offline) {
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+        this.offline = offline;
+    }
+
+    public File file(String fileName) {
+        return new File(directory, fileName);
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Brings each file up to date from its URL, fetching any that need it at the same time.
+     */
+    public Map<File, Status> refresh(Map<File, URL> sources) {
+        Map<File, CompletableFuture<Status>> pending = new LinkedHashMap<>();
+        ExecutorService fetches = null;
+        for (Map.Entry<File, URL> source : sources.entrySet()) {
+            File file = source.getKey();
+            if (offline || (file.isFile() && System.currentTimeMillis() - file.lastModified() < ttlMillis)) {
+                pending.put(file, CompletableFuture.completedFuture(file.isFile() ? Status.CACHED : Status.MISSING));
+                continue;
+            }
+            if (fetches == null) {
+                directory.mkdirs();
+                fetches = Executors.newFixedThreadPool(Math.min(sources.size(), MAX_FETCHES));
+            }
+            pending.put(file, CompletableFuture.supplyAsync(() -> fetch(file, source.getValue()), fetches));
+        }
+        Map<File, Status> statuses = new LinkedHashMap<>();
+        pending.forEach((file, status) -> statuses.put(file, status.join()));
+        if (fetches != null) {
+            fetches.shutdown();
+        }
+        return statuses;
+    }
+
+    private static Status fetch(File file, URL url) {
+        File meta = new File(file.getPath() + ".meta");
+        Properties validators = loadMeta(meta);
+        try {
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            if (connection instanceof HttpURLConnection && file.isFile()) {
+                if (validators.getProperty("ETag") != null) {
+                    connection.setRequestProperty("If-None-Match", validators.getProperty("ETag"));
+                }
+                if (validators.getProperty("Last-Modified") != null) {
+                    connection.setRequestProperty("If-Modified-Since", validators.getProperty("Last-Modified"));
+                }
+            }
+            if (connection instanceof HttpURLConnection) {
+                int code = ((HttpURLConnection) connection).getResponseCode();
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && file.isFile()) {
+                    // Restart the TTL
+                    file.setLastModified(System.currentTimeMillis());
+                    return Status.UNCHANGED;
+                }
+                if (code != HttpURLConnection.HTTP_OK) {
+                    return file.isFile() ? Status.STALE : Status.MISSING;
+                }
+            }
+            Path temporary = DataFiles.temporaryFile(file);
+            try {
+                long length;
+                try (InputStream in = connection.getInputStream()) {
+                    length = Files.copy(in, temporary, StandardCopyOption.REPLACE_EXISTING);
+                }
+                // A connection dropped part way through reads as a short body rather than an error
+                if (connection.getContentLengthLong() >= 0 && length != connection.getContentLengthLong()) {
+                    throw new IOException("Incomplete download: " + length + " of " + connection.getContentLengthLong() + " bytes");
+                }
+                DataFiles.replace(temporary, file);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+            try {
+                saveMeta(meta, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
+            } catch (IOException e) {
+                // The next refresh downloads the file again instead of revalidating it
+            }
+            return Status.DOWNLOADED;
+        } catch (IOException e) {
+            return file.isFile() ? Status.STALE : Status.MISSING;
+        }
+    }
+
+    private static Properties loadMeta(File meta) {
+        Properties validators = new Properties();
+        if (meta.isFile()) {
+            try (InputStream in = new FileInputStream(meta)) {
+                validators.load(in);
+            } catch (IOException e) {
+                // Revalidate without them
+            }
+        }
+        return validators;
+    }
+
+    private static void saveMeta(File meta, String etag, String lastModified) throws IOException {
+        Properties validators = new Properties();
+        if (etag != null) {
+            validators.setProperty("ETag", etag);
+        }
+        if (lastModified != null) {
+            validators.setProperty("Last-Modified", lastModified);
+        }
+        Path temporary = DataFiles.temporaryFile(meta);
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                validators.store(out, null);
+            }
+            DataFiles.replace(temporary, meta);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -1,31 +1,55 @@
 package co.uk.jackgraves.logscanner;
 
+import co.uk.jackgraves.logscanner.io.CompressedLogs;
+import co.uk.jackgraves.logscanner.io.EventAssembler;
+import co.uk.jackgraves.logscanner.io.LineBatchReader;
+import co.uk.jackgraves.logscanner.io.LineSource;
+import co.uk.jackgraves.logscanner.io.LogFiles;
+import co.uk.jackgraves.logscanner.io.LogFollower;
+import co.uk.jackgraves.logscanner.io.LogSeeker;
+import co.uk.jackgraves.logscanner.io.MappedLogReader;
 import co.uk.jackgraves.logscanner.options.Options;
-import co.uk.jackgraves.logscanner.xml.ObjectStream;
+import co.uk.jackgraves.logscanner.regex.DefinitionMatcher;
+import co.uk.jackgraves.logscanner.regex.PatternProfile;
+import co.uk.jackgraves.logscanner.xml.DefinitionReader;
 import co.uk.jackgraves.logscanner.xml.RegExItem;
 
-import javax.xml.bind.JAXBContext;
-import javax.xml.bind.JAXBException;
-import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.channels.Channels;
-import java.nio.channels.ReadableByteChannel;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 /**
  * Log Scanner for Atlassian Applications
  *
  * Arguments:
- *  -def (Definitions) - e.g. -def=jira-core | jira-soft | jira-desk | confluence | crowd | bitbucket | Custom Definition URL
+ *  -def (Definitions, several separated by commas are merged and scanned in one pass) - e.g. -def=jira-core | jira-soft | jira-desk | confluence | crowd | bitbucket | Custom Definition URL
  *  -log (Location of Log File) - e.g. -log=atlassian-jira.log
  *  -stream (Run in Parrallel) - e.g. -stream
+ *  -mmap (Memory-map the log and scan it in parallel chunks) - e.g. -mmap
+ *  -engine (Matching engine) - e.g. -engine=regex | dfa (all supported expressions combined into one automaton)
  *  -verbose (Show all instances of an error) - e.g. -verbose
+ *  -events (Match multi-line events such as stack traces as one record) - e.g. -events
+ *  -resume (Only scan what was appended since the last run, using a saved checkpoint) - e.g. -resume
+ *  -follow (Keep running and report problems as they are written to the log) - e.g. -follow
+ *  -from / -to (Only scan records in a time window, found by binary search) - e.g. -from="2018-05-01 14:00" -to="2018-05-01 14:30"
+ *  -cache (Directory downloaded definitions are kept in, default the working directory) - e.g. -cache=definitions
+ *  -ttl (Hours before a downloaded definition is checked for changes, default 24) - e.g. -ttl=24
+ *  -offline (Only use definitions already downloaded) - e.g. -offline
  *
  * Example:
  *  java -jar log-scanner.jar -def=jira-core -log=atlassian-jira.log -stream
@@ -43,36 +67,73 @@ public class LogScanner {
     }};
 
     private static final String RETURN = "\r\n";
-    private static final String SPACING = "      ";
+    static final String SPACING = "      ";
     private static final String COMPLETE = SPACING + "Complete" + RETURN;
-    private static final Pattern DATE_REGEX = Pattern.compile("(\\d{4}-\\d{2}-\\d{2}) (\\d{2}:\\d{2}:\\d{2})");
+    private static final long FOLLOW_POLL_MILLIS = 500;
+    private static final int PROFILE_TOP = 10;
+    private static final long DEFAULT_TTL_HOURS = 24;
+    private static final int TASKS_PER_WORKER = 4;
+    private static final int MIN_LINES_PER_TASK = 64;
+    private static final int MIN_PATTERNS_PER_TASK = 16;
 
     public static void main(String[] args) {
         // Initialise Variables
         boolean stream = false;
+        boolean mmap = false;
         boolean verbose = false;
+        boolean events = false;
+        boolean resume = false;
+        boolean follow = false;
+        boolean profile = false;
+        int port = -1;
+        boolean offline = false;
+        long ttlHours = DEFAULT_TTL_HOURS;
+        String cacheDirectory = ".";
         String logFile = null;
-        String defInput = null;
+        List<String> defInputs = null;
+        long from = LogTimestamp.NONE;
+        long to = LogTimestamp.NONE;
+        long timeout = 0;
+        DefinitionMatcher.Engine engine = DefinitionMatcher.Engine.REGEX;
 
         // Options
         Options opt = new Options(args, 2);
         opt.getSet().addOption("stream", Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("mmap", Options.Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("verbose", Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("events", Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("resume", Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("follow", Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("profile", Options.Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("log", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
         opt.getSet().addOption("def", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("engine", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("from", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("to", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("timeout", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("serve", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("cache", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("ttl", Options.Separator.EQUALS, Options.Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("offline", Options.Multiplicity.ZERO_OR_ONE);
         opt.check();
 
         // Respond to Options
+        boolean serve = opt.getSet().isSet("serve");
         if (opt.getSet().isSet("log")) {
             logFile = opt.getSet().getOption("log").getResultValue(0);
-        } else {
+        } else if (!serve) {
             print("Error: No Log File Specified (-log=xxx.log)" + RETURN);
             print("Please specify a log file to analyse" + RETURN);
             System.exit(1);
         }
         if (opt.getSet().isSet("def")) {
-            defInput = opt.getSet().getOption("def").getResultValue(0);
-        } else {
+            defInputs = Arrays.stream(opt.getSet().getOption("def").getResultValue(0).split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+        if ((defInputs == null || defInputs.isEmpty()) && !serve) {
             print("Error: No Definition Specified (-def=jira-core)" + RETURN);
             print("Please specify [jira-core, jira-soft, jira-desk, confluence, bitbucket, bamboo, crowd] or a definition URL (http/https)" + RETURN);
             System.exit(1);
@@ -80,157 +141,774 @@ public class LogScanner {
         if (opt.getSet().isSet("stream")) {
             stream = true;
         }
+        if (opt.getSet().isSet("mmap")) {
+            mmap = true;
+        }
         if (opt.getSet().isSet("verbose")) {
             verbose = true;
         }
+        if (opt.getSet().isSet("events")) {
+            events = true;
+        }
+        if (opt.getSet().isSet("resume")) {
+            resume = true;
+        }
+        if (opt.getSet().isSet("follow")) {
+            follow = true;
+        }
+        if (opt.getSet().isSet("profile")) {
+            profile = true;
+        }
+        if (opt.getSet().isSet("offline")) {
+            offline = true;
+        }
+        if (opt.getSet().isSet("cache")) {
+            cacheDirectory = opt.getSet().getOption("cache").getResultValue(0);
+        }
+        if (opt.getSet().isSet("ttl")) {
+            try {
+                ttlHours = Long.parseLong(opt.getSet().getOption("ttl").getResultValue(0));
+            } catch (NumberFormatException e) {
+                ttlHours = -1;
+            }
+            if (ttlHours < 0) {
+                print("Error: Invalid Definition TTL (-ttl=hours)" + RETURN);
+                System.exit(1);
+            }
+        }
+        DefinitionStore store = new DefinitionStore(new File(cacheDirectory), TimeUnit.HOURS.toMillis(ttlHours), offline);
+        if (opt.getSet().isSet("engine")) {
+            try {
+                engine = DefinitionMatcher.Engine.valueOf(opt.getSet().getOption("engine").getResultValue(0).toUpperCase());
+            } catch (IllegalArgumentException e) {
+                print("Error: Unknown Engine (-engine=regex | dfa)" + RETURN);
+                System.exit(1);
+            }
+        }
+
+        if (opt.getSet().isSet("from")) {
+            from = LogTimestamp.parseArgument(opt.getSet().getOption("from").getResultValue(0), false);
+            if (from == LogTimestamp.NONE) {
+                print("Error: Invalid Start Time (-from=\"yyyy-MM-dd HH:mm[:ss]\")" + RETURN);
+                System.exit(1);
+            }
+        }
+        if (opt.getSet().isSet("to")) {
+            to = LogTimestamp.parseArgument(opt.getSet().getOption("to").getResultValue(0), true);
+            if (to == LogTimestamp.NONE) {
+                print("Error: Invalid End Time (-to=\"yyyy-MM-dd HH:mm[:ss]\")" + RETURN);
+                System.exit(1);
+            }
+        }
+        if (opt.getSet().isSet("timeout")) {
+            try {
+                timeout = Long.parseLong(opt.getSet().getOption("timeout").getResultValue(0));
+            } catch (NumberFormatException e) {
+                timeout = -1;
+            }
+            if (timeout <= 0) {
+                print("Error: Invalid Match Timeout (-timeout=milliseconds)" + RETURN);
+                System.exit(1);
+            }
+        }
+        if (serve) {
+            try {
+                port = Integer.parseInt(opt.getSet().getOption("serve").getResultValue(0));
+            } catch (NumberFormatException e) {
+                port = -1;
+            }
+            if (port < 0 || port > 65535) {
+                print("Error: Invalid Port (-serve=8080)" + RETURN);
+                System.exit(1);
+            }
+            runServer(defInputs, store, port, verbose, events, engine, timeout);
+            return;
+        }
+
+        if (resume && (from != LogTimestamp.NONE || to != LogTimestamp.NONE)) {
+            print("Error: -resume cannot be combined with a time window (-from / -to)" + RETURN);
+            System.exit(1);
+        }
+        if (follow && to != LogTimestamp.NONE) {
+            print("Error: -follow cannot be combined with an end time (-to)" + RETURN);
+            System.exit(1);
+        }
+
+        List<File> logFiles = new ArrayList<>();
+        try {
+            logFiles = LogFiles.resolve(logFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (logFiles.isEmpty()) {
+            print("Error: No Log Files Found (-log=" + logFile + ")" + RETURN);
+            print("Please specify a log file, a directory or a pattern such as logs/atlassian-jira.log*" + RETURN);
+            System.exit(1);
+        }
+        if (!isSinglePlainFile(logFiles) && (resume || follow || from != LogTimestamp.NONE || to != LogTimestamp.NONE)) {
+            print("Error: -resume, -follow, -from and -to can only be used with a single uncompressed log file" + RETURN);
+            System.exit(1);
+        }
 
         // Run Scanner
-        runScanner(defInput, logFile, stream, verbose);
+        runScanner(defInputs, store, logFiles, stream, mmap, verbose, events, resume, follow, profile, engine, from, to, timeout);
     }
 
-    private static void runScanner(String definition, String logFile, boolean stream, boolean verbose) {
+    private static void runScanner(List<String> definitions, DefinitionStore store, List<File> logFiles, boolean stream, boolean mmap, boolean verbose, boolean events, boolean resume, boolean follow, boolean profile, DefinitionMatcher.Engine engine, long from, long to, long timeout) {
         // Introduction
         String mode = "Sequential";
         if(stream) mode = "Parrallel";
+        if(mmap) mode = "Memory-Mapped Parrallel";
+        if(!isSinglePlainFile(logFiles)) mode = "Multi-File Parrallel";
         print("[ Standalone Atlassian Log Scanner - Started (" + mode + " Mode) ]" + RETURN + RETURN);
 
         // Download Definition
-        print("[1/5] Downloading Definitions..." + RETURN);
-        if(!new File(getFileName(definition)).isFile()) {
-            downloadDefinition(definition);
-            print(COMPLETE);
-        } else {
+        print("[1/4] Downloading Definitions..." + RETURN);
+        Map<String, DefinitionStore.Status> statuses = fetchDefinitions(definitions, store);
+        if (statuses.containsValue(DefinitionStore.Status.MISSING)) {
+            print("Error: Definitions Could Not Be Downloaded" + RETURN);
+            System.exit(1);
+        }
+        if (statuses.values().stream().allMatch(status -> status == DefinitionStore.Status.CACHED)) {
             print(SPACING + "Skipping (Already Downloaded)" + RETURN);
+        } else {
+            print(COMPLETE);
         }
+        List<File> definitionFiles = definitions.stream().map(definition -> store.file(getFileName(definition))).collect(Collectors.toList());
 
         // Process XML
-        print("[2/5] Parsing XML..." + RETURN);
-        List<RegExItem> regexItems = Objects.requireNonNull(unmarshallXml(definition).regexItems);
-        print(COMPLETE);
+        print("[2/4] Parsing XML..." + RETURN);
+        Definitions loaded = Objects.requireNonNull(loadDefinitions(definitionFiles));
+        if (definitions.size() > 1) {
+            print(SPACING + loaded.patterns.size() + " definitions merged from " + definitions.size() + " files (" + loaded.duplicates + " duplicates dropped)" + RETURN);
+        }
+        if (loaded.cached) {
+            print(SPACING + "Skipping (Unchanged Since Last Run)" + RETURN);
+        } else {
+            print(COMPLETE);
+        }
 
         // Build RegEx List
-        print("[3/5] Generating Regular Expressions..." + RETURN);
-        HashMap<String, Pattern> regularExpressions = regexItems.stream().collect(
-                Collectors.toMap(
-                        regexItem -> regexItem.URL,
-                        regexItem -> Pattern.compile(regexItem.regex),
-                        (a, b) -> b,
-                        HashMap::new
-                )
-        );
-        print(COMPLETE);
-
-        // Read Log File
-        print("[4/5] Reading Log File..." + RETURN);
-        ArrayList<String> log = readLogFile(logFile);
+        print("[3/4] Generating Regular Expressions..." + RETURN);
+        HashMap<String, Pattern> regularExpressions = loaded.compiled();
+        DefinitionMatcher matcher = new DefinitionMatcher(regularExpressions, engine, profile, timeout);
+        if (engine == DefinitionMatcher.Engine.DFA) {
+            print(SPACING + matcher.getCombinedCount() + " of " + matcher.size() + " combined into a single automaton" + RETURN);
+        }
+        print(SPACING + (matcher.size() - matcher.getCombinedCount() - matcher.getUnfilteredCount()) + " of " + matcher.size() + " prefiltered by required text" + RETURN);
         print(COMPLETE);
 
-        // Parse Logs
-        print("[5/5] Parsing Log Lines..." + RETURN);
-        ArrayList<Result> errors;
-        errors = stream ? parseLogStream(log, regularExpressions, verbose) : parseLog(log, regularExpressions, verbose);
+        // Read and Parse Log Lines
+        print("[4/4] Scanning Log File" + (logFiles.size() > 1 ? "s (" + logFiles.size() + ")" : "") + "..." + RETURN);
+        String logFile = logFiles.get(0).getPath();
+        long start = 0;
+        long end = new File(logFile).length();
+        if (from != LogTimestamp.NONE || to != LogTimestamp.NONE) {
+            try (LogSeeker seeker = new LogSeeker(logFile, line -> LogTimestamp.parseAt(line, 0))) {
+                start = from != LogTimestamp.NONE ? seeker.seek(from) : 0;
+                end = Math.max(start, to != LogTimestamp.NONE ? seeker.seek(to) : seeker.getSize());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            print(SPACING + "Time Window: bytes " + start + " to " + end + " of " + new File(logFile).length() + " (line numbers count from the start of the window)" + RETURN);
+        }
+        File checkpointFile = new File(store.file(getFileName(String.join(",", definitions))).getPath() + "." + new File(logFile).getAbsolutePath().hashCode() + ".checkpoint");
+        ResultAggregator previous = null;
+        if (resume) {
+            try {
+                // Leave a line that is still being written for the next run
+                end = Checkpoint.endOfLastLine(logFile);
+                Checkpoint checkpoint = Checkpoint.load(checkpointFile);
+                String reason = checkpoint == null ? "no checkpoint" : checkpoint.checkResume(logFile, definitionFiles, verbose, events);
+                if (reason == null) {
+                    start = checkpoint.getOffset();
+                    previous = checkpoint.getResults();
+                    print(SPACING + "Resuming from byte " + start + " of " + end + RETURN);
+                } else {
+                    print(SPACING + "Scanning from the start (" + reason + ")" + RETURN);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        ResultAggregator results;
+        if (!isSinglePlainFile(logFiles)) {
+            results = scanLogFiles(logFiles, matcher, verbose, events);
+        } else {
+            results = mmap ? scanMappedLogFile(logFile, start, end, matcher, verbose, events) : scanLogFile(logFile, start, end, matcher, stream, verbose, events);
+        }
+        if (previous != null) {
+            previous.merge(results, previous.getLineCount());
+            results = previous;
+        }
+        if (resume) {
+            try {
+                Checkpoint.capture(logFile, end, definitionFiles, events, results).save(checkpointFile);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         print("\r" + COMPLETE);
 
         // Print Errors
         print(RETURN + "Detected Problems:" + RETURN);
-        for(Result err : errors) {
-            print(err.getDate() != null ? SPACING + err.getUrl() + " (" + err.getDate() + ")" + RETURN : SPACING + err.getUrl() + RETURN);
+        for(ResultSummary summary : results.getSummaries()) {
+            print(SPACING + describe(summary) + RETURN);
+        }
+        if (verbose) {
+            print(RETURN + "All Occurrences:" + RETURN);
+            for(Result err : results.getOccurrences()) {
+                print(SPACING + describe(err) + RETURN);
+            }
+        }
+
+        if (!results.getTimeouts().isEmpty()) {
+            print(RETURN + "Timed Out (gave up after " + timeout + " ms):" + RETURN);
+            for (Result result : results.getTimeouts()) {
+                print(SPACING + describe(result) + RETURN);
+            }
+        }
+        if (profile) {
+            printProfile(matcher);
+        }
+
+        // Keep the compiled definitions and report new problems as they are written
+        if (follow) {
+            print(RETURN + "[ Following " + logFile + " - Press Ctrl+C to Stop ]" + RETURN);
+            followLogFile(logFile, end, results.getLineCount(), matcher, events);
         }
         print(RETURN + "[ Standalone Atlassian Log Scanner - Finished ]" + RETURN);
     }
 
-    private static String getDefinitionUrl(String product) {
-        return PRODUCT_DEFINITIONS.getOrDefault(product,PRODUCT_DEFINITIONS.get("jira-core"));
+    private static void printProfile(DefinitionMatcher matcher) {
+        print(RETURN + "Slowest Definitions:" + RETURN);
+        for (PatternProfile.Entry entry : matcher.getProfile().top(PROFILE_TOP)) {
+            if (entry.getRuns() > 0) {
+                print(SPACING + entry.getUrl() + " (" + String.format("%.1f", entry.getNanos() / 1e6) + " ms over " + entry.getRuns() + " runs, " + entry.getHits() + " hits)" + RETURN);
+            }
+        }
+        if (matcher.getCombinedCount() > 0) {
+            print(SPACING + "(" + matcher.getCombinedCount() + " definitions matched by the combined automaton are not timed separately)" + RETURN);
+        }
     }
 
-    private static void downloadDefinition(String defInput) {
+    /**
+     * Loads and compiles the given definitions, or every product's when none is given, and serves scans of them
+     * over HTTP until the process is stopped.
+     */
+    private static void runServer(List<String> definitions, DefinitionStore store, int port, boolean verbose, boolean events, DefinitionMatcher.Engine engine, long timeout) {
+        print("[ Standalone Atlassian Log Scanner - Starting Server ]" + RETURN + RETURN);
+        print("[1/2] Loading Definitions..." + RETURN);
+        List<String> names = new ArrayList<>();
+        if (definitions != null && !definitions.isEmpty()) {
+            names.addAll(definitions);
+        } else {
+            // jira-core first, as the default for requests that do not name their definitions
+            names.add("jira-core");
+            PRODUCT_DEFINITIONS.keySet().stream().filter(name -> !names.contains(name)).sorted().forEach(names::add);
+        }
+        Map<String, DefinitionStore.Status> statuses = fetchDefinitions(names, store);
+        Map<String, DefinitionMatcher> matchers = new LinkedHashMap<>();
+        for (String name : names) {
+            if (statuses.get(name) == DefinitionStore.Status.MISSING) {
+                continue;
+            }
+            Definitions loaded = loadDefinitions(Collections.singletonList(store.file(getFileName(name))));
+            if (loaded == null) {
+                print(SPACING + name + ": Skipping (Could Not Be Parsed)" + RETURN);
+                continue;
+            }
+            matchers.put(name, new DefinitionMatcher(loaded.compiled(), engine, false, timeout));
+            print(SPACING + name + ": " + loaded.count + " definitions" + RETURN);
+        }
+        if (matchers.isEmpty()) {
+            print("Error: No Definitions Could Be Loaded" + RETURN);
+            System.exit(1);
+        }
+        print(COMPLETE);
+
+        print("[2/2] Starting Server..." + RETURN);
         try {
-            URL website = getUrl(defInput);
-            ReadableByteChannel rbc = Channels.newChannel(website.openStream());
-            FileOutputStream fos = new FileOutputStream(getFileName(defInput));
-            fos.getChannel().transferFrom(rbc, 0, Long.MAX_VALUE);
+            ScanServer server = new ScanServer(port, matchers, verbose, events);
+            server.start();
+            print(COMPLETE);
+            print(RETURN + "[ Serving http://127.0.0.1:" + server.getPort() + "/scan - Press Ctrl+C to Stop ]" + RETURN);
         } catch (IOException e) {
             e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static String getDefinitionUrl(String product) {
+        return PRODUCT_DEFINITIONS.getOrDefault(product,PRODUCT_DEFINITIONS.get("jira-core"));
+    }
+
+    /**
+     * Downloads or revalidates the definition files that need it, all at once, printing what happened to any that
+     * were not simply reused. Returns the status of each by name, in the order given.
+     */
+    private static Map<String, DefinitionStore.Status> fetchDefinitions(List<String> names, DefinitionStore store) {
+        Map<File, URL> sources = new LinkedHashMap<>();
+        for (String name : names) {
+            try {
+                sources.put(store.file(getFileName(name)), getUrl(name));
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
+            }
+        }
+        Map<File, DefinitionStore.Status> refreshed = store.refresh(sources);
+        Map<String, DefinitionStore.Status> statuses = new LinkedHashMap<>();
+        for (String name : names) {
+            DefinitionStore.Status status = refreshed.getOrDefault(store.file(getFileName(name)), DefinitionStore.Status.MISSING);
+            statuses.put(name, status);
+            if (status == DefinitionStore.Status.UNCHANGED) {
+                print(SPACING + name + ": Unchanged" + RETURN);
+            } else if (status == DefinitionStore.Status.DOWNLOADED) {
+                print(SPACING + name + ": Downloaded" + RETURN);
+            } else if (status == DefinitionStore.Status.STALE) {
+                print(SPACING + name + ": Could Not Be Refreshed (Using Previous Download)" + RETURN);
+            } else if (status == DefinitionStore.Status.MISSING) {
+                print(SPACING + name + (store.isOffline() ? ": Not Downloaded Yet (-offline)" : ": Could Not Be Downloaded") + RETURN);
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Reads the entries of the downloaded definition files in order and merges them, dropping any entry whose
+     * expression or URL already came from an earlier file. Returns null if a file cannot be read.
+     */
+    static Definitions loadDefinitions(List<File> xmlFiles) {
+        Definitions definitions = new Definitions();
+        for (File xml : xmlFiles) {
+            if (!loadDefinitions(xml, definitions)) {
+                return null;
+            }
+            definitions.endFile();
         }
+        return definitions;
     }
-    
-    private static ObjectStream unmarshallXml(String defInput) {
+
+    /**
+     * Reads the entries of a downloaded definition file, from the binary cache beside it when the XML has not changed
+     * since it was last parsed, and starts compiling each pattern on the common pool as soon as its entry is read.
+     */
+    private static boolean loadDefinitions(File xml, Definitions definitions) {
+        File cache = new File(xml.getPath() + ".compiled");
         try {
-            JAXBContext jaxbContext = JAXBContext.newInstance(ObjectStream.class);
-            Unmarshaller jaxbUnmarshaller = jaxbContext.createUnmarshaller();
-            return (ObjectStream) jaxbUnmarshaller.unmarshal(new File(getFileName(defInput)));
-        } catch (JAXBException e) {
+            long checksum = DataFiles.checksum(xml);
+            List<RegExItem> cached = DefinitionCache.load(cache, checksum);
+            if (cached != null) {
+                cached.forEach(definitions::add);
+                return true;
+            }
+            definitions.cached = false;
+            List<RegExItem> items;
+            try (InputStream in = new BufferedInputStream(new FileInputStream(xml))) {
+                items = DefinitionReader.read(in, definitions::add).regexItems;
+            }
+            try {
+                DefinitionCache.save(cache, checksum, items);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return true;
+        } catch (IOException | XMLStreamException e) {
             e.printStackTrace();
         }
-        return null;
+        return false;
     }
 
-    private static ArrayList<String> readLogFile(String location) {
-        String line;
-        ArrayList<String> loglines = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(location))) {
-            while ((line = br.readLine()) != null) {
-                loglines.add(line);
+    /**
+     * Patterns being compiled in the background, by the URL of their definition. Within one file a later entry with
+     * the same URL replaces an earlier one; across files the first file to define an expression or URL keeps it.
+     */
+    static class Definitions {
+        final Map<String, CompletableFuture<Pattern>> patterns = new LinkedHashMap<>();
+        private final Set<String> earlierUrls = new HashSet<>();
+        private final Set<String> earlierRegexes = new HashSet<>();
+        private final Set<String> fileRegexes = new HashSet<>();
+        boolean cached = true;
+        int count;
+        int duplicates;
+
+        private void add(RegExItem item) {
+            String regex = item.regex;
+            count++;
+            if (earlierUrls.contains(item.URL) || earlierRegexes.contains(regex)) {
+                duplicates++;
+                return;
             }
-        } catch (IOException e) {
+            fileRegexes.add(regex);
+            patterns.put(item.URL, CompletableFuture.supplyAsync(() -> Pattern.compile(regex)));
+        }
+
+        private void endFile() {
+            earlierUrls.addAll(patterns.keySet());
+            earlierRegexes.addAll(fileRegexes);
+            fileRegexes.clear();
+        }
+
+        /**
+         * Waits for every pattern, rethrowing the first that failed to compile as it would have been thrown inline.
+         */
+        HashMap<String, Pattern> compiled() {
+            HashMap<String, Pattern> compiled = new HashMap<>();
+            try {
+                patterns.forEach((url, pattern) -> compiled.put(url, pattern.join()));
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            return compiled;
+        }
+    }
+
+    private static ResultAggregator scanLogFile(String location, long start, long end, DefinitionMatcher matcher, boolean stream, boolean verbose, boolean events) {
+        ResultAggregator results = new ResultAggregator(verbose);
+        List<String> records = new ArrayList<>();
+        List<Long> recordLines = new ArrayList<>();
+        EventAssembler assembler = new EventAssembler(LogScanner::startsRecord, (event, number) -> {
+            records.add(event);
+            recordLines.add(number);
+        });
+        long lineNumber = 1;
+        long scanned = 0;
+        try (LineBatchReader reader = new LineBatchReader(location, start, end);
+             ProgressReporter progress = ProgressReporter.start(reader.getSize())) {
+            List<String> batch;
+            while ((batch = reader.next()) != null) {
+                if (events) {
+                    for (String line : batch) {
+                        assembler.add(line, lineNumber++);
+                    }
+                    parseRecords(records, recordLines::get, matcher, stream, results);
+                    records.clear();
+                    recordLines.clear();
+                } else {
+                    long first = lineNumber;
+                    parseRecords(batch, i -> first + i, matcher, stream, results);
+                    lineNumber += batch.size();
+                }
+                results.countLines(batch.size());
+                progress.add(reader.getPosition() - scanned, batch.size());
+                scanned = reader.getPosition();
+            }
+            assembler.flush();
+            parseRecords(records, recordLines::get, matcher, stream, results);
+        }
+        return results;
+    }
+
+    private static ResultAggregator scanMappedLogFile(String location, long start, long end, DefinitionMatcher matcher, boolean verbose, boolean events) {
+        ResultAggregator results = new ResultAggregator(verbose);
+        try (MappedLogReader reader = new MappedLogReader(location, start, end);
+             ProgressReporter progress = ProgressReporter.start(reader.getSize())) {
+            // With events, chunks are cut where a record starts so that no event spans two chunks
+            List<MappedLogReader.Chunk> chunks = reader.split(Runtime.getRuntime().availableProcessors() * 4, events ? LogScanner::startsRecord : null);
+            List<ResultAggregator> parts = chunks.parallelStream()
+                    .map(chunk -> {
+                        ResultAggregator part = scanLines(chunk, null, matcher, verbose, events);
+                        progress.add(chunk.length(), part.getLineCount());
+                        return part;
+                    })
+                    .collect(Collectors.toList());
+            // Line numbers within a chunk are relative to its start
+            for (ResultAggregator part : parts) {
+                results.merge(part, results.getLineCount());
+            }
+        } catch (IOException | UncheckedIOException e) {
             e.printStackTrace();
         }
-        return loglines;
+        return results;
     }
 
-    private static ArrayList<Result> parseLog(List<String> logFile, Map<String, Pattern> regularExpressions, boolean verbose) {
-        ArrayList<Result> errors = new ArrayList<>();
-        int count = 0;
-        int last = 0;
-        int size = logFile.size();
-        Matcher matcher;
-        for (String line : logFile) {
-            for(String url : regularExpressions.keySet()) {
-                matcher = regularExpressions.get(url).matcher(line);
-                if(matcher.find()) {
-                    if(!errors.contains(url) || verbose) {
-                        errors.add(new Result(line, url));
+    /**
+     * Scans several files on one pool: every plain file is cut into line-aligned chunks (small files make a single
+     * chunk), gzip files are decompressed as one stream and every entry of a zip file is its own task. All the tasks
+     * are queued together, so a large file does not leave the other workers idle.
+     * Results are merged per file (or zip entry) in chunk order, then across files in the order given.
+     * This always works as -mmap does, whatever the -stream and -mmap flags say.
+     */
+    static ResultAggregator scanLogFiles(List<File> files, DefinitionMatcher matcher, boolean verbose, boolean events) {
+        ResultAggregator results = new ResultAggregator(verbose);
+        long size = files.stream().mapToLong(File::length).sum();
+        ProgressReporter progress = ProgressReporter.start(size);
+        int workers = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        Map<String, Throwable> failed = new LinkedHashMap<>();
+        try {
+            LinkedHashMap<String, List<ForkJoinTask<ResultAggregator>>> tasks = new LinkedHashMap<>();
+            for (File file : files) {
+                String source = file.getPath();
+                try {
+                    submitScans(file, source, pool, tasks, progress, matcher, verbose, events);
+                } catch (IOException | UncheckedIOException e) {
+                    failed.put(source, e);
+                }
+            }
+            for (Map.Entry<String, List<ForkJoinTask<ResultAggregator>>> sourceTasks : tasks.entrySet()) {
+                ResultAggregator sourceResults = new ResultAggregator(verbose, sourceTasks.getKey());
+                try {
+                    for (ForkJoinTask<ResultAggregator> task : sourceTasks.getValue()) {
+                        sourceResults.merge(task.join(), sourceResults.getLineCount());
                     }
+                } catch (RuntimeException e) {
+                    // A damaged archive or unreadable file leaves the other sources to report
+                    failed.put(sourceTasks.getKey(), e);
+                    continue;
                 }
+                results.merge(sourceResults);
             }
-            count++;
-            last = printPercentage(count, last, size);
+        } finally {
+            progress.close();
+            pool.shutdownNow();
         }
-        return errors;
+        for (Map.Entry<String, Throwable> failure : failed.entrySet()) {
+            Throwable cause = failure.getValue();
+            while (cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            print(SPACING + failure.getKey() + ": Skipping (Could Not Be Read: " + cause + ")" + RETURN);
+        }
+        return results;
     }
 
-    private static ArrayList<Result> parseLogStream(List<String> logFile, Map<String, Pattern> regularExpressions, boolean verbose) {
-        ArrayList<Result> errors = new ArrayList<>();
-        AtomicInteger count = new AtomicInteger();
-        AtomicInteger last = new AtomicInteger();
-        int size = logFile.size();
-        final Matcher[] matcher = new Matcher[1];
-        logFile.parallelStream()
-                .forEach(line ->{
-                    Matcher dateMatcher = DATE_REGEX.matcher(line);
-                    String date;
-                    date = dateMatcher.find() ? dateMatcher.group(1) + " " + dateMatcher.group(2) : null;
-                    for(String url : regularExpressions.keySet()) {
-                        matcher[0] = regularExpressions.get(url).matcher(line);
-                        if(matcher[0].find()) {
-                            Result result = new Result(url, line, date);
-                            if(!errors.contains(result) || verbose) {
-                                errors.add(result);
+    /**
+     * Queues the scan of one file: a single task for a gzip file, one per entry of a zip file and one per chunk
+     * of a plain file. Every task opens the file itself and closes it when done, so no more files are open at
+     * a time than there are workers, however many are queued.
+     */
+    private static void submitScans(File file, String source, ForkJoinPool pool,
+                                    Map<String, List<ForkJoinTask<ResultAggregator>>> tasks, ProgressReporter progress,
+                                    DefinitionMatcher matcher, boolean verbose, boolean events) throws IOException {
+        int workers = pool.getParallelism();
+        switch (CompressedLogs.detect(file)) {
+            case GZIP:
+                tasks.put(source, Collections.singletonList(pool.submit(() -> {
+                    try (InputStream in = new FileInputStream(file)) {
+                        ResultAggregator part = scanLines(CompressedLogs.lines(in), source, matcher, verbose, events);
+                        progress.add(file.length(), part.getLineCount());
+                        return part;
+                    }
+                })));
+                break;
+            case ZIP:
+                List<? extends ZipEntry> entries;
+                try (ZipFile zip = new ZipFile(file)) {
+                    entries = Collections.list(zip.entries());
+                }
+                // Oldest entry first, as for files on disk
+                entries.sort(Comparator.comparingLong(ZipEntry::getTime).thenComparing(ZipEntry::getName));
+                for (ZipEntry entry : entries) {
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    String entrySource = source + "!/" + entry.getName();
+                    tasks.put(entrySource, Collections.singletonList(pool.submit(() -> {
+                        try (ZipFile zip = new ZipFile(file); InputStream in = zip.getInputStream(entry)) {
+                            ResultAggregator part = scanLines(CompressedLogs.lines(in), entrySource, matcher, verbose, events);
+                            progress.add(Math.max(entry.getCompressedSize(), 0), part.getLineCount());
+                            return part;
+                        }
+                    })));
+                }
+                break;
+            default:
+                List<MappedLogReader.Chunk> chunks;
+                try (MappedLogReader reader = new MappedLogReader(source)) {
+                    chunks = reader.split(workers * 4, events ? LogScanner::startsRecord : null);
+                }
+                List<ForkJoinTask<ResultAggregator>> chunkTasks = new ArrayList<>();
+                for (MappedLogReader.Chunk bounds : chunks) {
+                    long start = bounds.getStart();
+                    long end = start + bounds.length();
+                    chunkTasks.add(pool.submit(() -> {
+                        try (MappedLogReader reader = new MappedLogReader(source, start, end)) {
+                            ResultAggregator part = new ResultAggregator(verbose, source);
+                            for (MappedLogReader.Chunk chunk : reader.split(1)) {
+                                part.merge(scanLines(chunk, source, matcher, verbose, events), part.getLineCount());
                             }
+                            progress.add(end - start, part.getLineCount());
+                            return part;
+                        }
+                    }));
+                }
+                tasks.put(source, chunkTasks);
+        }
+    }
+
+    static ResultAggregator scanLines(LineSource lines, String source, DefinitionMatcher matcher, boolean verbose, boolean events) {
+        ResultAggregator part = new ResultAggregator(verbose, source);
+        try {
+            if (events) {
+                EventAssembler assembler = new EventAssembler(LogScanner::startsRecord, (event, number) -> matchLine(event, number, matcher, part));
+                part.countLines(lines.forEachLine((line, lineIndex) -> assembler.add(line, lineIndex + 1)));
+                assembler.flush();
+            } else {
+                // Lines containing none of the literals the definitions require are never decoded
+                part.countLines(lines.forEachLine(matcher::mayMatch, (line, lineIndex) -> matchLine(line, lineIndex + 1, matcher, part)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return part;
+    }
+
+    private static boolean isSinglePlainFile(List<File> logFiles) {
+        try {
+            return logFiles.size() == 1 && CompressedLogs.detect(logFiles.get(0)) == CompressedLogs.Format.PLAIN;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    static boolean startsRecord(String line) {
+        return LogTimestamp.parseAt(line, 0) != LogTimestamp.NONE;
+    }
+
+    private static void parseRecords(List<String> records, IntToLongFunction lineNumbers, DefinitionMatcher matcher, boolean stream, ResultAggregator results) {
+        if (stream) {
+            parseLogStream(records, lineNumbers, matcher, results);
+        } else {
+            parseLog(records, lineNumbers, matcher, results);
+        }
+    }
+
+    /**
+     * The line may be a reused view; it is only copied out if a definition matches.
+     */
+    private static void matchLine(CharSequence line, long lineNumber, DefinitionMatcher matcher, ResultAggregator results) {
+        matcher.match(line, url -> results.add(url, line.toString(), lineNumber), url -> results.timeout(url, line, lineNumber));
+    }
+
+    static void parseLog(List<String> logFile, IntToLongFunction lineNumbers, DefinitionMatcher matcher, ResultAggregator results) {
+        for (int i = 0; i < logFile.size(); i++) {
+            matchLine(logFile.get(i), lineNumbers.applyAsLong(i), matcher, results);
+        }
+    }
+
+    /**
+     * Matches a batch in parallel. A batch with enough lines for every worker is split by line. A shorter one, with
+     * fewer than MIN_LINES_PER_TASK * TASKS_PER_WORKER lines per worker, such as the last batch of a file or a batch
+     * of a few hundred events, is also split by pattern, so that a large definition set still keeps every core busy.
+     * Only -stream scans a file in batches; -mmap and multi-file scans split by chunk instead.
+     */
+    static void parseLogStream(List<String> logFile, IntToLongFunction lineNumbers, DefinitionMatcher matcher, ResultAggregator results) {
+        int tasks = ForkJoinPool.getCommonPoolParallelism() * TASKS_PER_WORKER;
+        int lineParts = Math.max(1, logFile.size() / MIN_LINES_PER_TASK);
+        if (lineParts < tasks && matcher.size() >= 2 * MIN_PATTERNS_PER_TASK) {
+            parseLogGrid(logFile, lineNumbers, matcher, results, lineParts, (tasks + lineParts - 1) / lineParts);
+            return;
+        }
+        // Each worker fills its own aggregator; they are merged in line order once the batch is done
+        ResultAggregator found = IntStream.range(0, logFile.size()).parallel()
+                .collect(() -> new ResultAggregator(results.isVerbose(), results.getSource()),
+                        (part, i) -> matchLine(logFile.get(i), lineNumbers.applyAsLong(i), matcher, part),
+                        ResultAggregator::merge);
+        results.merge(found);
+    }
+
+    /**
+     * Selects the candidate patterns of every line once, then runs every range of lines against each share of its
+     * lines' candidates as its own task, using up to the given number of shares when lines have enough candidates
+     * to go round. Hits come back as line and pattern numbers packed into a long (the lowest bit marks a timeout),
+     * and are added in that order once all the tasks are done, so the results are the same as matching line by line.
+     */
+    static void parseLogGrid(List<String> logFile, IntToLongFunction lineNumbers, DefinitionMatcher matcher, ResultAggregator results, int lineParts, int maxShares) {
+        int lines = logFile.size();
+        int[][] candidates = IntStream.range(0, lines).parallel()
+                .mapToObj(i -> matcher.candidates(logFile.get(i)))
+                .toArray(int[][]::new);
+        long listed = Arrays.stream(candidates).mapToLong(line -> line.length).sum();
+        int shares = (int) Math.min(maxShares, Math.max(1, listed / Math.max(1, lines) / MIN_PATTERNS_PER_TASK));
+        long[] hits = IntStream.range(0, lineParts * shares).parallel()
+                .mapToObj(task -> {
+                    int lineFrom = (int) ((long) lines * (task / shares) / lineParts);
+                    int lineTo = (int) ((long) lines * (task / shares + 1) / lineParts);
+                    int share = task % shares;
+                    LongStream.Builder found = LongStream.builder();
+                    for (int i = lineFrom; i < lineTo; i++) {
+                        long line = (long) i << 32;
+                        IntConsumer onMatch = pattern -> found.add(line | (long) pattern << 1);
+                        IntConsumer onTimeout = pattern -> found.add(line | (long) pattern << 1 | 1);
+                        int[] lineCandidates = candidates[i];
+                        int to = lineCandidates.length * (share + 1) / shares;
+                        for (int c = lineCandidates.length * share / shares; c < to; c++) {
+                            matcher.runCandidate(logFile.get(i), lineCandidates[c], onMatch, onTimeout);
                         }
                     }
-                    count.getAndIncrement();
-                    last.set(printPercentage(count.get(), last.get(), size));
-                });
-        return errors;
+                    return found.build();
+                })
+                .flatMapToLong(found -> found)
+                .sorted()
+                .toArray();
+        for (long hit : hits) {
+            int i = (int) (hit >>> 32);
+            String url = matcher.getUrl((int) hit >>> 1);
+            if ((hit & 1) == 0) {
+                results.add(url, logFile.get(i), lineNumbers.applyAsLong(i));
+            } else {
+                results.timeout(url, logFile.get(i), lineNumbers.applyAsLong(i));
+            }
+        }
     }
 
-    private static int printPercentage(int count, int last, int size) {
-        int percentage = (int) (((double) count / (double) size) * 100);
-        if(last != percentage) {
-            print("\r      " + percentage + "%");
+    private static void followLogFile(String location, long offset, long lineNumber, DefinitionMatcher matcher, boolean events) {
+        EventAssembler.EventConsumer report = (record, number) -> matcher.match(record, url ->
+                print(SPACING + describe(new Result(url, record, LogTimestamp.parse(record), number)) + RETURN));
+        EventAssembler assembler = new EventAssembler(LogScanner::startsRecord, report);
+        try (LogFollower follower = new LogFollower(location, offset, lineNumber, FOLLOW_POLL_MILLIS)) {
+            follower.follow(new LogFollower.Listener() {
+                @Override
+                public void line(String line, long number) {
+                    if (events) {
+                        assembler.add(line, number);
+                    } else {
+                        report.accept(line, number);
+                    }
+                }
+
+                @Override
+                public void idle() {
+                    // A stack trace is written in one go, so do not hold it back until the next record arrives
+                    assembler.flush();
+                }
+
+                @Override
+                public void rotated() {
+                    assembler.flush();
+                    print(SPACING + "Log rotated, following the new file" + RETURN);
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String describe(Result result) {
+        String date = LogTimestamp.format(result.getTimestamp());
+        return result.getUrl() + " (" + (date != null ? date + ", " : "") + location(result.getSource(), result.getLineNumber()) + ")";
+    }
+
+    private static String location(String source, long lineNumber) {
+        return source != null ? source + " line " + lineNumber : "line " + lineNumber;
+    }
+
+    private static String describe(ResultSummary summary) {
+        String first = LogTimestamp.format(summary.getFirstTimestamp());
+        String last = LogTimestamp.format(summary.getLastTimestamp());
+        StringBuilder text = new StringBuilder(summary.getUrl()).append(" (").append(summary.getCount());
+        if (summary.getCount() == 1) {
+            text.append(" hit, ").append(first != null ? first + " " : "").append("at ").append(location(summary.getFirstSource(), summary.getFirstLineNumber()));
+        } else {
+            text.append(" hits, first ").append(first != null ? first + " " : "").append("at ").append(location(summary.getFirstSource(), summary.getFirstLineNumber()));
+            text.append(", last ").append(last != null ? last + " " : "").append("at ").append(location(summary.getLastSource(), summary.getLastLineNumber()));
         }
-        return percentage;
+        return text.append(")").toString();
     }
 
     private static URL getUrl(String defInput) throws MalformedURLException {
@@ -0,0 +1,124 @@
+package co.uk.jackgraves.logscanner;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Reads the "yyyy-MM-dd HH:mm:ss,SSS" timestamp of a log line into epoch milliseconds without allocating.
+ *
+ * Log times carry no zone, so they are read and printed as UTC; only their order and printed form matter.
+ */
+public final class LogTimestamp {
+    public static final long NONE = Long.MIN_VALUE;
+
+    private static final int LENGTH = "yyyy-MM-dd HH:mm:ss".length();
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC);
+
+    private LogTimestamp() {
+    }
+
+    /**
+     * Returns the first timestamp in the line, or {@link #NONE}. Atlassian logs put it at the start of the line,
+     * which is tried first; the milliseconds are optional.
+     */
+    public static long parse(CharSequence line) {
+        if (line == null) {
+            return NONE;
+        }
+        for (int i = 0; i + LENGTH <= line.length(); i++) {
+            long millis = parseAt(line, i);
+            if (millis != NONE) {
+                return millis;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Returns the timestamp starting exactly at the given offset, or {@link #NONE}.
+     */
+    public static long parseAt(CharSequence line, int offset) {
+        if (offset + LENGTH > line.length()
+                || line.charAt(offset + 4) != '-' || line.charAt(offset + 7) != '-' || line.charAt(offset + 10) != ' '
+                || line.charAt(offset + 13) != ':' || line.charAt(offset + 16) != ':') {
+            return NONE;
+        }
+        int year = digits(line, offset, 4);
+        int month = digits(line, offset + 5, 2);
+        int day = digits(line, offset + 8, 2);
+        int hour = digits(line, offset + 11, 2);
+        int minute = digits(line, offset + 14, 2);
+        int second = digits(line, offset + 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NONE;
+        }
+        int millis = 0;
+        if (offset + LENGTH + 4 <= line.length() && (line.charAt(offset + LENGTH) == ',' || line.charAt(offset + LENGTH) == '.')) {
+            millis = Math.max(digits(line, offset + LENGTH + 1, 3), 0);
+        }
+        return ((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis;
+    }
+
+    /**
+     * Parses a command line time: "yyyy-MM-dd", "yyyy-MM-dd HH:mm" or "yyyy-MM-dd HH:mm:ss" (a 'T' may stand in
+     * for the space). For the end of a window, returns the first millisecond after the period the value names,
+     * so that "2018-05-01 14:30" as an end includes the whole of 14:30. Returns {@link #NONE} if the value is invalid.
+     */
+    public static long parseArgument(String value, boolean end) {
+        String text = value.trim().replace('T', ' ');
+        long period;
+        if (text.length() == 10) {
+            text += " 00:00:00";
+            period = 24 * 60 * 60 * 1000L;
+        } else if (text.length() == 16) {
+            text += ":00";
+            period = 60 * 1000L;
+        } else if (text.length() == LENGTH) {
+            period = 1000L;
+        } else {
+            return NONE;
+        }
+        long millis = parseAt(text, 0);
+        return millis == NONE || !end ? millis : millis + period;
+    }
+
+    /**
+     * Formats a timestamp the way it is printed in reports (to the second), or returns null for {@link #NONE}.
+     */
+    public static String format(long millis) {
+        return millis == NONE ? null : FORMAT.format(Instant.ofEpochMilli(millis));
+    }
+
+    private static int digits(CharSequence line, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,103 @@
+package co.uk.jackgraves.logscanner;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shows how far a scan has got: percentage, lines and megabytes per second, and the time left.
+ *
+ * Workers only add to striped counters, which do not make them wait for each other; a single background thread
+ * reads the counters every {@link #INTERVAL_MILLIS} ms and rewrites the progress line. When the output is not a
+ * terminal (redirected to a file or piped into another program) nothing is started or printed at all.
+ */
+public class ProgressReporter implements Closeable {
+    private static final long INTERVAL_MILLIS = 250;
+
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder lines = new LongAdder();
+    private final long size;
+    private final long started = System.nanoTime();
+    private final PrintStream out;
+    private final ScheduledExecutorService timer;
+    private int width;
+
+    ProgressReporter(long size, PrintStream out) {
+        this.size = size;
+        this.out = out;
+        if (out == null) {
+            timer = null;
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::report, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Starts reporting on a scan of the given number of bytes, if the output is a terminal.
+     */
+    public static ProgressReporter start(long size) {
+        return new ProgressReporter(size, System.console() != null ? System.out : null);
+    }
+
+    /**
+     * Records that a part of the log has been scanned.
+     */
+    public void add(long scannedBytes, long scannedLines) {
+        bytes.add(scannedBytes);
+        lines.add(scannedLines);
+    }
+
+    /**
+     * Stops reporting and clears the progress line, so the caller can write over it.
+     */
+    @Override
+    public void close() {
+        if (timer == null) {
+            return;
+        }
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            out.print("\r" + pad("", width) + "\r");
+            out.flush();
+        }
+    }
+
+    private synchronized void report() {
+        long done = Math.min(bytes.sum(), size);
+        double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+        double bytesPerSecond = done / seconds;
+        StringBuilder line = new StringBuilder(LogScanner.SPACING)
+                .append(size > 0 ? done * 100 / size : 100).append("% (")
+                .append(String.format("%,d lines/s, %.1f MB/s", (long) (lines.sum() / seconds), bytesPerSecond / (1024 * 1024)));
+        if (bytesPerSecond > 0 && done < size) {
+            long left = (long) ((size - done) / bytesPerSecond);
+            line.append(String.format(", %d:%02d left", left / 60, left % 60));
+        }
+        line.append(')');
+        String text = line.toString();
+        out.print("\r" + pad(text, width));
+        out.flush();
+        width = text.length();
+    }
+
+    private static String pad(String text, int width) {
+        StringBuilder padded = new StringBuilder(text);
+        while (padded.length() < width) {
+            padded.append(' ');
+        }
+        return padded.toString();
+    }
+}
@@ -5,7 +5,9 @@ import java.util.Objects;
 public class Result {
     private String url;
     private String logLine;
-    private String date;
+    private long timestamp = LogTimestamp.NONE;
+    private long lineNumber;
+    private String source;
 
     public String getUrl() {
         return url;
@@ -23,18 +25,50 @@ public class Result {
         this.logLine = logLine;
     }
 
-    public String getDate() {
-        return date;
+    /**
+     * Epoch milliseconds of the log line, or {@link LogTimestamp#NONE}.
+     */
+    public long getTimestamp() {
+        return timestamp;
     }
 
-    public void setDate(String date) {
-        this.date = date;
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
     }
 
-    public Result(String url, String logLine, String date) {
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public void setLineNumber(long lineNumber) {
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * The log file the line came from, or null when only one file is scanned.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public Result(String url, String source, String logLine, long timestamp, long lineNumber) {
+        this(url, logLine, timestamp, lineNumber);
+        this.source = source;
+    }
+
+    public Result(String url, String logLine, long timestamp, long lineNumber) {
+        this(url, logLine, timestamp);
+        this.lineNumber = lineNumber;
+    }
+
+    public Result(String url, String logLine, long timestamp) {
         this.url = url;
         this.logLine = logLine;
-        this.date = date;
+        this.timestamp = timestamp;
     }
 
     @Override
@@ -0,0 +1,131 @@
+package co.uk.jackgraves.logscanner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Collects definition hits keyed by URL in constant time per hit, in order of first occurrence.
+ * Individual hits, and with them their timestamps, are only kept in verbose mode.
+ *
+ * Not thread safe: parallel scans fill one aggregator per worker and merge them in log order.
+ */
+public class ResultAggregator {
+    private static final int TIMEOUT_LINE_LENGTH = 256;
+
+    private final LinkedHashMap<String, ResultSummary> summaries = new LinkedHashMap<>();
+    private final List<Result> occurrences = new ArrayList<>();
+    private final List<Result> timeouts = new ArrayList<>();
+    private final boolean verbose;
+    private final String source;
+    private long lineCount;
+
+    public ResultAggregator(boolean verbose) {
+        this(verbose, null);
+    }
+
+    /**
+     * @param source the log file that hits added to this aggregator come from, or null when only one file is scanned
+     */
+    public ResultAggregator(boolean verbose, String source) {
+        this.verbose = verbose;
+        this.source = source;
+    }
+
+    public void add(String url, String line, long lineNumber) {
+        ResultSummary summary = summaries.get(url);
+        if (summary == null) {
+            summaries.put(url, new ResultSummary(url, source, line, lineNumber));
+        } else {
+            summary.hit(line, lineNumber);
+        }
+        if (verbose) {
+            occurrences.add(new Result(url, source, line, LogTimestamp.parse(line), lineNumber));
+        }
+    }
+
+    /**
+     * Records that a definition was given up on for a line because it ran out of time. Only the start of the line,
+     * which holds its timestamp, is kept: such lines tend to be very long.
+     */
+    public void timeout(String url, CharSequence line, long lineNumber) {
+        String start = line.subSequence(0, Math.min(line.length(), TIMEOUT_LINE_LENGTH)).toString();
+        timeouts.add(new Result(url, source, start, LogTimestamp.parse(start), lineNumber));
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Records that a number of log lines have been scanned, matching or not.
+     */
+    public void countLines(long lines) {
+        lineCount += lines;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Appends the hits of a later part of the log, shifting its line numbers by the given offset.
+     */
+    public void merge(ResultAggregator later, long offset) {
+        for (ResultSummary summary : later.summaries.values()) {
+            ResultSummary existing = summaries.get(summary.getUrl());
+            if (existing == null) {
+                summaries.put(summary.getUrl(), summary.shift(offset));
+            } else {
+                existing.append(summary, offset);
+            }
+        }
+        for (Result result : later.occurrences) {
+            occurrences.add(shift(result, offset));
+        }
+        for (Result result : later.timeouts) {
+            timeouts.add(shift(result, offset));
+        }
+        lineCount += later.lineCount;
+    }
+
+    public void merge(ResultAggregator later) {
+        merge(later, 0);
+    }
+
+    public Collection<ResultSummary> getSummaries() {
+        return summaries.values();
+    }
+
+    public List<Result> getOccurrences() {
+        return occurrences;
+    }
+
+    /**
+     * Lines on which a definition ran out of time, in log order.
+     */
+    public List<Result> getTimeouts() {
+        return timeouts;
+    }
+
+    private static Result shift(Result result, long offset) {
+        return offset == 0 ? result : new Result(result.getUrl(), result.getSource(), result.getLogLine(), result.getTimestamp(), result.getLineNumber() + offset);
+    }
+
+    void restore(ResultSummary summary) {
+        summaries.put(summary.getUrl(), summary);
+    }
+
+    void restore(Result occurrence) {
+        occurrences.add(occurrence);
+    }
+
+    void restoreTimeout(Result timeout) {
+        timeouts.add(timeout);
+    }
+}
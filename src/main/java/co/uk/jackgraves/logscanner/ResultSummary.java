@@ -0,0 +1,96 @@
+package co.uk.jackgraves.logscanner;
+
+/**
+ * Every hit of one definition, reduced to a count and the first and last matching lines.
+ */
+public class ResultSummary {
+    private final String url;
+    private long count;
+    private String firstSource;
+    private String firstLine;
+    private long firstLineNumber;
+    private String lastSource;
+    private String lastLine;
+    private long lastLineNumber;
+
+    /**
+     * @param source the log file the line came from, or null when only one file is scanned
+     */
+    public ResultSummary(String url, String source, String line, long lineNumber) {
+        this(url, 1, source, line, lineNumber, source, line, lineNumber);
+    }
+
+    ResultSummary(String url, long count, String firstSource, String firstLine, long firstLineNumber, String lastSource, String lastLine, long lastLineNumber) {
+        this.url = url;
+        this.count = count;
+        this.firstSource = firstSource;
+        this.firstLine = firstLine;
+        this.firstLineNumber = firstLineNumber;
+        this.lastSource = lastSource;
+        this.lastLine = lastLine;
+        this.lastLineNumber = lastLineNumber;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public String getFirstSource() {
+        return firstSource;
+    }
+
+    public String getFirstLine() {
+        return firstLine;
+    }
+
+    public long getFirstLineNumber() {
+        return firstLineNumber;
+    }
+
+    public String getLastSource() {
+        return lastSource;
+    }
+
+    public String getLastLine() {
+        return lastLine;
+    }
+
+    public long getLastLineNumber() {
+        return lastLineNumber;
+    }
+
+    public long getFirstTimestamp() {
+        return LogTimestamp.parse(firstLine);
+    }
+
+    public long getLastTimestamp() {
+        return LogTimestamp.parse(lastLine);
+    }
+
+    void hit(String line, long lineNumber) {
+        count++;
+        lastLine = line;
+        lastLineNumber = lineNumber;
+    }
+
+    /**
+     * Copy of this summary with its line numbers shifted by the given offset.
+     */
+    ResultSummary shift(long offset) {
+        return new ResultSummary(url, count, firstSource, firstLine, firstLineNumber + offset, lastSource, lastLine, lastLineNumber + offset);
+    }
+
+    /**
+     * Folds in the hits of a later part of the log, whose line numbers are shifted by the given offset.
+     */
+    void append(ResultSummary later, long offset) {
+        count += later.count;
+        lastSource = later.lastSource;
+        lastLine = later.lastLine;
+        lastLineNumber = later.lastLineNumber + offset;
+    }
+}
@@ -0,0 +1,277 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.io.CompressedLogs;
+import co.uk.jackgraves.logscanner.io.LogFiles;
+import co.uk.jackgraves.logscanner.io.MappedLogReader;
+import co.uk.jackgraves.logscanner.regex.DefinitionMatcher;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps the compiled definitions in memory and scans logs sent over HTTP, so that each scan costs neither JVM
+ * startup nor parsing and compiling the definitions again.
+ *
+ * POST /scan?def=jira-core with the log (plain or gzip) as the body, or GET /scan?def=jira-core&amp;path=/logs/atlassian-jira.log*
+ * for logs the server can read itself. Optional verbose=true and events=true work as the command line flags.
+ * The results are returned as JSON.
+ *
+ * Scans run on a fixed number of workers with a bounded queue; when both are full the request is turned away with
+ * 503 and a Retry-After header rather than piling up. Requests are read on a pool of the same size that hands the
+ * scan to a worker, which answers it, instead of waiting for it. The server only listens on the loopback address.
+ */
+public class ScanServer {
+    private static final int QUEUE_PER_WORKER = 4;
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final Map<String, DefinitionMatcher> definitions;
+    private final boolean verbose;
+    private final boolean events;
+    private final HttpServer server;
+    private final ThreadPoolExecutor scans;
+    private final ThreadPoolExecutor requests;
+
+    /**
+     * @param definitions compiled definitions by name; the first is used when a request does not name one
+     */
+    public ScanServer(int port, Map<String, DefinitionMatcher> definitions, boolean verbose, boolean events) throws IOException {
+        this(port, definitions, verbose, events, Runtime.getRuntime().availableProcessors());
+    }
+
+    ScanServer(int port, Map<String, DefinitionMatcher> definitions, boolean verbose, boolean events, int workers) throws IOException {
+        this.definitions = definitions;
+        this.verbose = verbose;
+        this.events = events;
+        this.scans = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER));
+        // Handling a request only queues its scan, so when this queue is full the server's own thread can do it;
+        // the server closes a connection its executor rejects without answering it
+        this.requests = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(workers * QUEUE_PER_WORKER),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/scan", this::handle);
+        this.server.setExecutor(requests);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        scans.shutdownNow();
+        requests.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        boolean queued = false;
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+            String path = query.get("path");
+            if (!"POST".equals(method) && !("GET".equals(method) && path != null)) {
+                reject(exchange, 405, error("Use POST with the log as the body, or GET with a path"));
+                return;
+            }
+            String name = query.getOrDefault("def", definitions.keySet().iterator().next());
+            DefinitionMatcher matcher = definitions.get(name);
+            if (matcher == null) {
+                reject(exchange, 404, error("Unknown definitions: " + name + " (loaded: " + String.join(", ", definitions.keySet()) + ")"));
+                return;
+            }
+            boolean requestVerbose = Boolean.parseBoolean(query.getOrDefault("verbose", String.valueOf(verbose)));
+            boolean requestEvents = Boolean.parseBoolean(query.getOrDefault("events", String.valueOf(events)));
+            try {
+                scans.execute(() -> scan(exchange, name, matcher, path, requestVerbose, requestEvents));
+                queued = true;
+            } catch (RejectedExecutionException e) {
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                reject(exchange, 503, error(scans.isShutdown() ? "Server is stopping" : "All workers are busy"));
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            reject(exchange, 500, error(e.toString()));
+        } finally {
+            if (!queued) {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Runs one request's scan on a worker and answers it.
+     */
+    private static void scan(HttpExchange exchange, String name, DefinitionMatcher matcher, String path, boolean verbose, boolean events) {
+        try {
+            try {
+                long started = System.nanoTime();
+                ResultAggregator results = path != null
+                        ? scanPath(path, matcher, verbose, events)
+                        : LogScanner.scanLines(CompressedLogs.lines(exchange.getRequestBody()), null, matcher, verbose, events);
+                respond(exchange, 200, toJson(name, results, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started)));
+            } catch (FileNotFoundException e) {
+                respond(exchange, 404, error(e.toString()));
+            } catch (IOException | RuntimeException e) {
+                // Possibly part way through the body
+                reject(exchange, 500, error(e.toString()));
+            }
+        } catch (IOException e) {
+            // The client has gone away
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Scans the files the path names, one after the other on the calling worker; other requests keep the rest busy.
+     */
+    private static ResultAggregator scanPath(String path, DefinitionMatcher matcher, boolean verbose, boolean events) throws IOException {
+        List<File> files = LogFiles.resolve(path);
+        if (files.isEmpty()) {
+            throw new FileNotFoundException("No log files found: " + path);
+        }
+        ResultAggregator results = new ResultAggregator(verbose);
+        for (File file : files) {
+            String source = files.size() > 1 ? file.getPath() : null;
+            switch (CompressedLogs.detect(file)) {
+                case GZIP:
+                    try (InputStream in = new FileInputStream(file)) {
+                        results.merge(LogScanner.scanLines(CompressedLogs.lines(in), source, matcher, verbose, events));
+                    }
+                    break;
+                case ZIP:
+                    try (ZipFile zip = new ZipFile(file)) {
+                        List<? extends ZipEntry> entries = Collections.list(zip.entries());
+                        entries.sort(Comparator.comparingLong(ZipEntry::getTime).thenComparing(ZipEntry::getName));
+                        for (ZipEntry entry : entries) {
+                            if (!entry.isDirectory()) {
+                                try (InputStream in = zip.getInputStream(entry)) {
+                                    results.merge(LogScanner.scanLines(CompressedLogs.lines(in), file.getPath() + "!/" + entry.getName(), matcher, verbose, events));
+                                }
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    // A file larger than one mapping comes in several chunks, each counting its lines from 1
+                    ResultAggregator fileResults = new ResultAggregator(verbose, source);
+                    try (MappedLogReader reader = new MappedLogReader(file.getPath())) {
+                        for (MappedLogReader.Chunk chunk : reader.split(1, events ? LogScanner::startsRecord : null)) {
+                            fileResults.merge(LogScanner.scanLines(chunk, source, matcher, verbose, events), fileResults.getLineCount());
+                        }
+                    }
+                    results.merge(fileResults);
+            }
+        }
+        return results;
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                values.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"), URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return values;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Answers before the request body has been read. The server then closes the connection rather than read the
+     * rest of the body, so the client is told to stop sending it.
+     */
+    private static void reject(HttpExchange exchange, int status, String json) throws IOException {
+        exchange.getResponseHeaders().set("Connection", "close");
+        respond(exchange, status, json);
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String toJson(String definitions, ResultAggregator results, long millis) {
+        StringBuilder json = new StringBuilder("{\"definitions\":").append(quote(definitions))
+                .append(",\"lines\":").append(results.getLineCount())
+                .append(",\"millis\":").append(millis)
+                .append(",\"problems\":[");
+        String separator = "";
+        for (ResultSummary summary : results.getSummaries()) {
+            json.append(separator).append("{\"url\":").append(quote(summary.getUrl()))
+                    .append(",\"hits\":").append(summary.getCount())
+                    .append(",\"first\":");
+            appendLocation(json, summary.getFirstTimestamp(), summary.getFirstSource(), summary.getFirstLineNumber());
+            json.append(",\"last\":");
+            appendLocation(json, summary.getLastTimestamp(), summary.getLastSource(), summary.getLastLineNumber());
+            json.append('}');
+            separator = ",";
+        }
+        json.append(']');
+        if (results.isVerbose()) {
+            appendResults(json, "occurrences", results.getOccurrences());
+        }
+        appendResults(json, "timeouts", results.getTimeouts());
+        return json.append('}').toString();
+    }
+
+    private static void appendResults(StringBuilder json, String name, List<Result> list) {
+        json.append(",\"").append(name).append("\":[");
+        String separator = "";
+        for (Result result : list) {
+            json.append(separator).append("{\"url\":").append(quote(result.getUrl())).append(",\"at\":");
+            appendLocation(json, result.getTimestamp(), result.getSource(), result.getLineNumber());
+            json.append('}');
+            separator = ",";
+        }
+        json.append(']');
+    }
+
+    private static void appendLocation(StringBuilder json, long timestamp, String source, long lineNumber) {
+        json.append("{\"time\":").append(quote(LogTimestamp.format(timestamp)))
+                .append(",\"source\":").append(quote(source))
+                .append(",\"line\":").append(lineNumber)
+                .append('}');
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,72 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Recognises gzip and zip logs by their magic bytes, so that rotated and bundled logs can be scanned
+ * as they are decompressed instead of being extracted to disk first.
+ */
+public final class CompressedLogs {
+    public enum Format {
+        PLAIN,
+        GZIP,
+        ZIP
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedLogs() {
+    }
+
+    public static Format detect(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] magic = new byte[4];
+            int read = 0;
+            while (read < magic.length) {
+                int count = in.read(magic, read, magic.length - read);
+                if (count < 0) {
+                    break;
+                }
+                read += count;
+            }
+            return detect(magic, read);
+        }
+    }
+
+    /**
+     * Reads the lines of a plain or gzip stream as UTF-8; the stream is decompressed if it starts with the gzip magic.
+     */
+    public static LineSource lines(InputStream in) {
+        return consumer -> {
+            InputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+            buffered.mark(4);
+            byte[] magic = new byte[4];
+            int read = buffered.read(magic);
+            buffered.reset();
+            InputStream decoded = detect(magic, Math.max(read, 0)) == Format.GZIP ? new GZIPInputStream(buffered, BUFFER_SIZE) : buffered;
+            return forEachLine(new BufferedReader(new InputStreamReader(decoded, StandardCharsets.UTF_8), BUFFER_SIZE), consumer);
+        };
+    }
+
+    private static long forEachLine(BufferedReader reader, ObjLongConsumer<String> consumer) throws IOException {
+        long index = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            consumer.accept(line, index++);
+        }
+        return index;
+    }
+
+    private static Format detect(byte[] magic, int length) {
+        if (length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return Format.GZIP;
+        }
+        if (length >= 4 && magic[0] == 'P' && magic[1] == 'K' && (magic[2] == 3 || magic[2] == 5) && (magic[3] == 4 || magic[3] == 6)) {
+            return Format.ZIP;
+        }
+        return Format.PLAIN;
+    }
+}
@@ -0,0 +1,69 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.util.function.Predicate;
+
+/**
+ * Groups physical log lines into events: a line that starts a new record (one with a leading timestamp)
+ * opens an event, and every following continuation line, such as a stack frame, is joined onto it with "\n".
+ *
+ * Events are capped in lines and characters so that a runaway trace cannot build an unbounded string;
+ * past the cap the remaining continuation lines start a new event.
+ */
+public class EventAssembler {
+    public static final int MAX_LINES = 512;
+    public static final int MAX_CHARS = 64 * 1024;
+
+    /**
+     * Receives a completed event and the line number of its first line.
+     */
+    public interface EventConsumer {
+        void accept(String event, long lineNumber);
+    }
+
+    private final Predicate<String> startsRecord;
+    private final EventConsumer consumer;
+    private final StringBuilder joined = new StringBuilder();
+    private String first;
+    private long lineNumber;
+    private int lines;
+
+    public EventAssembler(Predicate<String> startsRecord, EventConsumer consumer) {
+        this.startsRecord = startsRecord;
+        this.consumer = consumer;
+    }
+
+    public void add(String line, long lineNumber) {
+        if (lines > 0 && (lines >= MAX_LINES || length() + line.length() >= MAX_CHARS || startsRecord.test(line))) {
+            flush();
+        }
+        if (lines == 0) {
+            this.first = line;
+            this.lineNumber = lineNumber;
+        } else {
+            if (lines == 1) {
+                joined.append(first);
+            }
+            joined.append('\n').append(line);
+        }
+        lines++;
+    }
+
+    /**
+     * Hands on the event being built, if any. Call once the input is exhausted.
+     */
+    public void flush() {
+        if (lines == 0) {
+            return;
+        }
+        // Single-line events, by far the most common, are passed on without copying
+        String event = lines == 1 ? first : joined.toString();
+        first = null;
+        joined.setLength(0);
+        lines = 0;
+        consumer.accept(event, lineNumber);
+    }
+
+    private int length() {
+        return lines == 1 ? first.length() : joined.length();
+    }
+}
@@ -0,0 +1,154 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a log file on a background thread and hands the lines out in bounded batches.
+ *
+ * Only a handful of batches are held in memory at any one time, so the heap used does not
+ * grow with the size of the log, and matching can start while the file is still being read.
+ */
+public class LineBatchReader implements Closeable {
+    public static final int BATCH_SIZE = 4096;
+
+    private static final List<String> END = Collections.emptyList();
+
+    private final BlockingQueue<List<String>> batches;
+    private final AtomicLong position = new AtomicLong();
+    private final long size;
+    private final Thread reader;
+    private volatile boolean closed;
+
+    public LineBatchReader(String location) {
+        this(location, 0, new File(location).length());
+    }
+
+    /**
+     * Reads only the bytes from start (inclusive) to end (exclusive), which should both fall on line boundaries.
+     */
+    public LineBatchReader(String location, long start, long end) {
+        this(location, start, end, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public LineBatchReader(String location, long start, long end, int capacity) {
+        this.size = end - start;
+        this.batches = new ArrayBlockingQueue<>(Math.max(capacity, 2));
+        this.reader = new Thread(() -> read(location, start, end), "log-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * Returns the next batch of lines, blocking until one is available, or null once the file has been fully read.
+     */
+    public List<String> next() {
+        try {
+            List<String> batch = batches.take();
+            if (batch == END) {
+                batches.offer(END);
+                return null;
+            }
+            long bytes = 0;
+            for (String line : batch) {
+                bytes += line.length() + 1;
+            }
+            position.addAndGet(bytes);
+            return batch;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Approximate number of bytes handed out so far (line lengths plus terminators).
+     */
+    public long getPosition() {
+        return position.get();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        reader.interrupt();
+    }
+
+    private void read(String location, long start, long end) {
+        String line;
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        try (FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+             BufferedReader br = new BufferedReader(new InputStreamReader(new BoundedInputStream(Channels.newInputStream(channel.position(start)), end - start), StandardCharsets.UTF_8))) {
+            while (!closed && (line = br.readLine()) != null) {
+                batch.add(line);
+                if (batch.size() == BATCH_SIZE) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+            }
+            batches.put(END);
+        } catch (IOException e) {
+            e.printStackTrace();
+            try {
+                batches.put(END);
+            } catch (InterruptedException ignored) {
+                // closed by the consumer
+            }
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        }
+    }
+
+    /**
+     * Stops reading after a fixed number of bytes.
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+    }
+}
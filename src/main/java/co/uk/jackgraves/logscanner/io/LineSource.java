@@ -0,0 +1,32 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.IOException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A run of log lines that can be read once from start to end, such as a chunk of a mapped file or a compressed entry.
+ */
+public interface LineSource {
+    /**
+     * Hands every line, with its index within this source, to the consumer.
+     *
+     * @return the number of lines read
+     */
+    long forEachLine(ObjLongConsumer<String> consumer) throws IOException;
+
+    /**
+     * Like {@link #forEachLine(ObjLongConsumer)}, but sources that hold raw bytes may skip lines the filter rejects
+     * without decoding them, and may hand on a view that is reused for the next line rather than a String; call
+     * toString on it to keep a line. Skipped lines are still counted and keep their index. By default nothing is skipped.
+     */
+    default long forEachLine(ByteFilter filter, ObjLongConsumer<CharSequence> consumer) throws IOException {
+        return forEachLine(consumer::accept);
+    }
+
+    /**
+     * Decides from the UTF-8 bytes of a line, without its terminator, whether the line is needed.
+     */
+    interface ByteFilter {
+        boolean accept(byte[] utf8, int offset, int length);
+    }
+}
@@ -0,0 +1,64 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One line decoded into a char array that is reused for every line, so that lines which match nothing are never
+ * copied into a String of their own. The view is only valid until the next line is decoded; toString copies it out.
+ */
+final class LineView implements CharSequence {
+    // Replace malformed input the same way new String(bytes, UTF_8) does
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private char[] chars = new char[256];
+    private int length;
+    private String copy;
+
+    /**
+     * Decodes the UTF-8 bytes of a line, replacing whatever line was held before.
+     */
+    LineView decode(byte[] utf8, int offset, int count) {
+        // A UTF-8 byte never decodes to more than one char
+        if (chars.length < count) {
+            chars = new char[Math.max(count, chars.length * 2)];
+        }
+        CharBuffer out = CharBuffer.wrap(chars);
+        decoder.reset();
+        decoder.decode(ByteBuffer.wrap(utf8, offset, count), out, true);
+        decoder.flush(out);
+        length = out.position();
+        copy = null;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (copy == null) {
+            copy = new String(chars, 0, length);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,69 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expands the -log argument into the files to scan: a single file, every file under a directory, or the files
+ * matching a glob such as "logs/atlassian-jira.log*".
+ *
+ * Files are returned oldest first by modification time, so that rotated logs (atlassian-jira.log.10 ... .1,
+ * then atlassian-jira.log) are merged in the order they were written.
+ */
+public final class LogFiles {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private LogFiles() {
+    }
+
+    public static List<File> resolve(String location) throws IOException {
+        File file = new File(location);
+        if (file.isFile()) {
+            List<File> files = new ArrayList<>();
+            files.add(file);
+            return files;
+        }
+        if (file.isDirectory()) {
+            return walk(file.toPath(), path -> true);
+        }
+        int glob = indexOfGlob(location);
+        if (glob < 0) {
+            return new ArrayList<>();
+        }
+        // Walk from the deepest directory that has no glob characters in it
+        int separator = Math.max(location.lastIndexOf('/', glob), location.lastIndexOf(File.separatorChar, glob));
+        Path base = Paths.get(separator < 0 ? "." : location.substring(0, separator + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + location.substring(separator + 1));
+        if (!Files.isDirectory(base)) {
+            return new ArrayList<>();
+        }
+        return walk(base, path -> matcher.matches(base.relativize(path)));
+    }
+
+    private static List<File> walk(Path base, Predicate<Path> filter) throws IOException {
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter(filter)
+                    .map(Path::toFile)
+                    .sorted(Comparator.comparingLong(File::lastModified).thenComparing(File::getPath))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static int indexOfGlob(String location) {
+        for (int i = 0; i < location.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(location.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
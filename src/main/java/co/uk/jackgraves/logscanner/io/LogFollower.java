@@ -0,0 +1,201 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Follows a log as it is written to, like tail -F: polls the size of the open channel, reads whatever was appended,
+ * and hands on every complete line.
+ *
+ * Once the open file has been read to its end, the path is checked again: if it now names a different file
+ * (logrotate renamed the old one away) the new file is opened and read from the start, and if the same file has
+ * shrunk (copytruncate) reading restarts from its beginning.
+ */
+public class LogFollower implements Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives what happens to the followed log; called on the thread running {@link #follow}.
+     */
+    public interface Listener {
+        void line(String line, long lineNumber);
+
+        /**
+         * Nothing more has been written for now.
+         */
+        void idle();
+
+        /**
+         * The log was rotated or truncated; line numbers start again from 1.
+         */
+        void rotated();
+    }
+
+    private final Path path;
+    private final long pollMillis;
+    private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private FileChannel channel;
+    private Object fileKey;
+    private long position;
+    private long lineNumber;
+    private boolean partial;
+    private byte[] line = new byte[256];
+    private int length;
+    private volatile boolean closed;
+
+    /**
+     * @param offset     where to start reading, normally the end of what has already been scanned; if that falls
+     *                   inside a line, the rest of the line is skipped as it was scanned already
+     * @param lineNumber the number of lines before that offset
+     */
+    public LogFollower(String location, long offset, long lineNumber, long pollMillis) throws IOException {
+        this.path = Paths.get(location);
+        this.pollMillis = pollMillis;
+        this.channel = open();
+        if (channel == null) {
+            throw new NoSuchFileException(location);
+        }
+        this.position = offset;
+        this.lineNumber = lineNumber;
+        this.partial = offset > 0 && !endsLine(offset);
+    }
+
+    /**
+     * Reads new lines until the follower is closed or the thread is interrupted.
+     */
+    public void follow(Listener listener) throws IOException {
+        boolean idle = false;
+        while (!closed) {
+            if (read(listener)) {
+                idle = false;
+                continue;
+            }
+            if (!idle) {
+                listener.idle();
+                idle = true;
+            }
+            if (reopenIfRotated()) {
+                listener.rotated();
+                continue;
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    /**
+     * Reads whatever is available past the current position. Returns false if there was nothing new.
+     */
+    private boolean read(Listener listener) throws IOException {
+        if (channel.size() <= position) {
+            return false;
+        }
+        buffer.clear();
+        int read = channel.read(buffer, position);
+        if (read <= 0) {
+            return false;
+        }
+        position += read;
+        for (int i = 0; i < read; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n' && partial) {
+                partial = false;
+                length = 0;
+            } else if (b == '\n') {
+                int end = length > 0 && line[length - 1] == '\r' ? length - 1 : length;
+                listener.line(new String(line, 0, end, StandardCharsets.UTF_8), ++lineNumber);
+                length = 0;
+            } else {
+                if (length == line.length) {
+                    byte[] grown = new byte[line.length * 2];
+                    System.arraycopy(line, 0, grown, 0, length);
+                    line = grown;
+                }
+                line[length++] = b;
+            }
+        }
+        return true;
+    }
+
+    private boolean reopenIfRotated() throws IOException {
+        Object currentKey;
+        try {
+            currentKey = fileKey();
+        } catch (NoSuchFileException e) {
+            // Between logrotate moving the old file away and the application creating the new one
+            return false;
+        }
+        if (currentKey != null && !Objects.equals(currentKey, fileKey)) {
+            FileChannel rotated = open();
+            if (rotated == null) {
+                return false;
+            }
+            channel.close();
+            channel = rotated;
+            position = 0;
+        } else if (Files.size(path) < position) {
+            position = 0;
+        } else {
+            return false;
+        }
+        length = 0;
+        lineNumber = 0;
+        partial = false;
+        return true;
+    }
+
+    /**
+     * Opens the file the path names and records its key, or returns null if there is no file at the moment.
+     * The key is read before and after opening so that a rotation in between cannot pair the channel with the
+     * key of another file.
+     */
+    private FileChannel open() throws IOException {
+        try {
+            while (true) {
+                Object key = fileKey();
+                FileChannel opened = FileChannel.open(path, StandardOpenOption.READ);
+                try {
+                    if (Objects.equals(key, fileKey())) {
+                        fileKey = key;
+                        return opened;
+                    }
+                } catch (IOException e) {
+                    opened.close();
+                    throw e;
+                }
+                opened.close();
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Object fileKey() throws IOException {
+        return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    private boolean endsLine(long offset) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        return channel.read(last, offset - 1) == 1 && last.get(0) == '\n';
+    }
+}
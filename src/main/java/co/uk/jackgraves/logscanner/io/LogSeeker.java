@@ -0,0 +1,101 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.ToLongFunction;
+
+/**
+ * Finds byte offsets in a log by timestamp, relying on records being written in time order.
+ *
+ * Each probe reads only the few bytes needed to find the next record after a position, so locating
+ * a time window in a log of several gigabytes takes a few dozen small reads.
+ */
+public class LogSeeker implements Closeable {
+    private static final int SEEK_BUFFER_SIZE = 8192;
+    private static final int RECORD_PREFIX_SIZE = 64;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ToLongFunction<String> timestampOf;
+
+    /**
+     * @param timestampOf reads the timestamp at the start of a line (given its first bytes decoded as ISO-8859-1),
+     *                    returning Long.MIN_VALUE for continuation lines
+     */
+    public LogSeeker(String location, ToLongFunction<String> timestampOf) throws IOException {
+        this.channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+        this.size = channel.size();
+        this.timestampOf = timestampOf;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the offset of the first record stamped at or after the given time, or the file size if there is none.
+     */
+    public long seek(long timestamp) throws IOException {
+        long low = 0;
+        long high = size;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            long record = nextRecord(mid);
+            if (record < size && timestampAt(record) < timestamp) {
+                // Every position up to this record leads to the same, too early, record
+                low = record + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return nextRecord(low);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Start of the first record line beginning at or after the position.
+     */
+    private long nextRecord(long position) throws IOException {
+        long line = position == 0 ? 0 : nextLineStart(position - 1);
+        while (line < size && timestampAt(line) == Long.MIN_VALUE) {
+            line = nextLineStart(line);
+        }
+        return line;
+    }
+
+    private long timestampAt(long lineStart) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+        int read = channel.read(buffer, lineStart);
+        return read <= 0 ? Long.MIN_VALUE : timestampOf.applyAsLong(new String(buffer.array(), 0, read, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Position just after the first newline at or after the given one.
+     */
+    private long nextLineStart(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SEEK_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,188 @@
+package co.uk.jackgraves.logscanner.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Memory-maps a log file and cuts it into chunks that start and end on line boundaries,
+ * so that each chunk can be decoded and scanned by a different thread.
+ */
+public class MappedLogReader implements Closeable {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int SEEK_BUFFER_SIZE = 8192;
+    private static final int RECORD_PREFIX_SIZE = 64;
+    private static final int MAX_RECORD_SEEK = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+
+    public MappedLogReader(String location) throws IOException {
+        this(location, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Reads only the bytes from start (inclusive) to end (exclusive), which should both fall on line boundaries.
+     */
+    public MappedLogReader(String location, long start, long end) throws IOException {
+        this.channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ);
+        this.start = start;
+        this.end = Math.min(end, channel.size());
+    }
+
+    public long getSize() {
+        return end - start;
+    }
+
+    /**
+     * Splits the file into at most the given number of chunks, each ending just after a newline
+     * (apart from the last, which ends at the end of the file). A single mapping is limited to 2GB,
+     * so chunks are never made larger than that.
+     */
+    public List<Chunk> split(int count) throws IOException {
+        return split(count, null);
+    }
+
+    /**
+     * As {@link #split(int)}, but moves each boundary on to the next line that starts a record, so that
+     * multi-line events are not cut in two. The test is given the first bytes of a line decoded as ISO-8859-1.
+     * If no record starts within a short distance, the boundary stays on the plain line break.
+     */
+    public List<Chunk> split(int count, Predicate<String> startsRecord) throws IOException {
+        long target = Math.max(MIN_CHUNK_SIZE, getSize() / Math.max(count, 1) + 1);
+        target = Math.min(target, Integer.MAX_VALUE - MAX_RECORD_SEEK);
+        List<Chunk> chunks = new ArrayList<>();
+        long chunkStart = start;
+        while (chunkStart < end) {
+            long chunkEnd = chunkStart + target >= end ? end : nextLineStart(chunkStart + target);
+            if (startsRecord != null) {
+                chunkEnd = nextRecordStart(chunkEnd, startsRecord);
+            }
+            chunks.add(new Chunk(chunkStart, chunkEnd));
+            chunkStart = chunkEnd;
+        }
+        return chunks;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long nextRecordStart(long lineStart, Predicate<String> startsRecord) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+        long position = lineStart;
+        while (position < end && position - lineStart < MAX_RECORD_SEEK) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            if (startsRecord.test(new String(buffer.array(), 0, read, StandardCharsets.ISO_8859_1))) {
+                return position;
+            }
+            position = nextLineStart(position);
+        }
+        return position >= end ? end : lineStart;
+    }
+
+    private long nextLineStart(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SEEK_BUFFER_SIZE);
+        while (position < end) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return end;
+    }
+
+    /**
+     * A line-aligned region of the mapped file.
+     */
+    public class Chunk implements LineSource {
+        private final long start;
+        private final long end;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long length() {
+            return end - start;
+        }
+
+        /**
+         * Maps this chunk and decodes it line by line as UTF-8, stripping "\n" and "\r\n" terminators
+         * the same way BufferedReader.readLine does. The consumer also receives the index of the line within the chunk.
+         *
+         * @return the number of lines in the chunk
+         */
+        @Override
+        public long forEachLine(ObjLongConsumer<String> consumer) throws IOException {
+            return forEachLine((utf8, offset, length) -> true, (line, index) -> consumer.accept(line.toString(), index));
+        }
+
+        /**
+         * Only lines accepted by the filter are decoded and handed to the consumer; the rest are passed over as bytes.
+         * Every line is decoded into the same reusable view.
+         */
+        @Override
+        public long forEachLine(ByteFilter filter, ObjLongConsumer<CharSequence> consumer) throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            LineView view = new LineView();
+            byte[] line = new byte[256];
+            int length = 0;
+            long index = 0;
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    accept(filter, consumer, view, line, length, index++);
+                    length = 0;
+                } else {
+                    if (length == line.length) {
+                        byte[] grown = new byte[line.length * 2];
+                        System.arraycopy(line, 0, grown, 0, length);
+                        line = grown;
+                    }
+                    line[length++] = b;
+                }
+            }
+            if (length > 0) {
+                accept(filter, consumer, view, line, length, index++);
+            }
+            return index;
+        }
+
+        private void accept(ByteFilter filter, ObjLongConsumer<CharSequence> consumer, LineView view, byte[] line, int length, long index) {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (filter.accept(line, 0, length)) {
+                consumer.accept(view.decode(line, 0, length), index);
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Aho-Corasick automaton over a fixed set of literals, reporting every literal found in a
+ * piece of text in a single left-to-right pass.
+ *
+ * Transitions are stored as sorted key/target arrays per node; the root keeps a dense table
+ * so that the common case of falling back to the root costs a single array lookup.
+ */
+public class AhoCorasick {
+    private static final char[] NO_KEYS = new char[0];
+    private static final int[] NO_TARGETS = new int[0];
+
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] fail;
+    private final int[][] outputs;
+    private final int[] root = new int[Character.MAX_VALUE + 1];
+
+    public AhoCorasick(List<String> literals) {
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<List<Integer>> found = new ArrayList<>();
+        children.add(new TreeMap<>());
+        found.add(new ArrayList<>());
+        for (int id = 0; id < literals.size(); id++) {
+            int node = 0;
+            String literal = literals.get(id);
+            for (int i = 0; i < literal.length(); i++) {
+                Integer next = children.get(node).get(literal.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.get(node).put(literal.charAt(i), next);
+                    children.add(new TreeMap<>());
+                    found.add(new ArrayList<>());
+                }
+                node = next;
+            }
+            found.get(node).add(id);
+        }
+
+        int size = children.size();
+        keys = new char[size][];
+        targets = new int[size][];
+        fail = new int[size];
+        outputs = new int[size][];
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> edges = children.get(node);
+            keys[node] = edges.isEmpty() ? NO_KEYS : new char[edges.size()];
+            targets[node] = edges.isEmpty() ? NO_TARGETS : new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                keys[node][i] = edge.getKey();
+                targets[node][i++] = edge.getValue();
+            }
+        }
+        for (int i = 0; i < keys[0].length; i++) {
+            root[keys[0][i]] = targets[0][i];
+        }
+
+        // Breadth-first so that a node's failure link is always resolved before its children need it
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        outputs[0] = toArray(found.get(0));
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            List<Integer> own = found.get(node);
+            int[] inherited = outputs[fail[node]];
+            int[] merged = new int[own.size() + inherited.length];
+            for (int i = 0; i < own.size(); i++) {
+                merged[i] = own.get(i);
+            }
+            System.arraycopy(inherited, 0, merged, own.size(), inherited.length);
+            outputs[node] = merged;
+            for (int i = 0; i < keys[node].length; i++) {
+                int child = targets[node][i];
+                fail[child] = next(fail[node], keys[node][i]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Calls the consumer with the id (index in the constructor list) of every literal occurrence in the text.
+     * A literal that occurs several times is reported several times.
+     */
+    public void search(CharSequence text, IntConsumer consumer) {
+        int node = 0;
+        for (int i = 0, length = text.length(); i < length; i++) {
+            node = next(node, text.charAt(i));
+            for (int id : outputs[node]) {
+                consumer.accept(id);
+            }
+        }
+    }
+
+    /**
+     * Returns true if any literal occurs in the bytes, each byte being read as the char of the same value.
+     * Literals built from ISO-8859-1 decoded UTF-8 can so be searched for in raw UTF-8 without decoding it.
+     */
+    public boolean containsAny(byte[] bytes, int offset, int length) {
+        int node = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            node = next(node, (char) (bytes[i] & 0xFF));
+            if (outputs[node].length > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int next(int node, char c) {
+        while (node != 0) {
+            int i = Arrays.binarySearch(keys[node], c);
+            if (i >= 0) {
+                return targets[node][i];
+            }
+            node = fail[node];
+        }
+        return root[c];
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
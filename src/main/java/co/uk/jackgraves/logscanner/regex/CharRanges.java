@@ -0,0 +1,94 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.util.Arrays;
+
+/**
+ * Character sets stored as sorted, non-overlapping inclusive ranges: {low0, high0, low1, high1, ...}.
+ */
+final class CharRanges {
+    private CharRanges() {
+    }
+
+    static boolean contains(int[] ranges, char c) {
+        if (ranges.length == 2) {
+            return c >= ranges[0] && c <= ranges[1];
+        }
+        int low = 0;
+        int high = ranges.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (c < ranges[mid * 2]) {
+                high = mid - 1;
+            } else if (c > ranges[mid * 2 + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static int[] union(int[] a, int[] b) {
+        int[] all = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, all, a.length, b.length);
+        return normalise(all);
+    }
+
+    static int[] negate(int[] ranges) {
+        int[] result = new int[ranges.length + 2];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result[count++] = next;
+                result[count++] = ranges[i] - 1;
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            result[count++] = next;
+            result[count++] = Character.MAX_VALUE;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Adds the other case of every ASCII letter in the set, matching CASE_INSENSITIVE without UNICODE_CASE.
+     */
+    static int[] foldAscii(int[] ranges) {
+        int[] result = ranges;
+        for (int i = 0; i < ranges.length; i += 2) {
+            result = union(result, shift(ranges[i], ranges[i + 1], 'a', 'z', 'A' - 'a'));
+            result = union(result, shift(ranges[i], ranges[i + 1], 'A', 'Z', 'a' - 'A'));
+        }
+        return result;
+    }
+
+    private static int[] shift(int low, int high, int from, int to, int offset) {
+        low = Math.max(low, from);
+        high = Math.min(high, to);
+        return low > high ? new int[0] : new int[]{low + offset, high + offset};
+    }
+
+    private static int[] normalise(int[] ranges) {
+        int pairs = ranges.length / 2;
+        long[] packed = new long[pairs];
+        for (int i = 0; i < pairs; i++) {
+            packed[i] = ((long) ranges[i * 2] << 32) | ranges[i * 2 + 1];
+        }
+        Arrays.sort(packed);
+        int[] result = new int[ranges.length];
+        int count = 0;
+        for (long range : packed) {
+            int low = (int) (range >>> 32);
+            int high = (int) range;
+            if (count > 0 && low <= result[count - 1] + 1) {
+                result[count - 1] = Math.max(result[count - 1], high);
+            } else {
+                result[count++] = low;
+                result[count++] = high;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+}
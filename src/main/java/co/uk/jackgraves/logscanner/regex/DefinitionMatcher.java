@@ -0,0 +1,377 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a set of definition patterns against log lines.
+ *
+ * Before any regular expression is evaluated, the line is scanned once with an Aho-Corasick automaton built
+ * over the literals each pattern requires (see {@link LiteralExtractor}). Only patterns whose literal appears
+ * in the line, plus the patterns for which no literal could be extracted, are then run with java.util.regex.
+ *
+ * With the {@link Engine#DFA} engine, every pattern the automaton supports is compiled into one combined
+ * {@link MultiPatternDfa} which reports all of them in a single pass over the line; only the remaining patterns
+ * (backreferences, lookaround and so on) go through the prefilter and java.util.regex.
+ *
+ * When every pattern has required literals, {@link #mayMatch(byte[], int, int)} also tells from the raw UTF-8 bytes of
+ * a line whether it can match at all, so that lines matching nothing never need to be decoded.
+ *
+ * Patterns that turn out to be expensive and rarely match are also gated behind the other literals they require,
+ * as learned while scanning (see {@link PatternGates}).
+ *
+ * Instances are safe to share between threads: the patterns are immutable, while the scratch space and the adaptive
+ * {@link PatternGates} state are kept per thread, in a ThreadLocal.
+ */
+public class DefinitionMatcher {
+    public enum Engine {
+        REGEX,
+        DFA
+    }
+
+    private static final int MISSED = 0;
+    private static final int FOUND = 1;
+    private static final int TIMED_OUT = 2;
+
+    private final String[] urls;
+    private final Pattern[] patterns;
+    private final int[][] literalPatterns;
+    private final int[] alwaysRun;
+    private final AhoCorasick prefilter;
+    private final MultiPatternDfa dfa;
+    private final int[] dfaPatterns;
+    private final AhoCorasick bytePrefilter;
+    private final ThreadLocal<Candidates> candidates;
+    private final PatternProfile profile;
+    private final long budgetNanos;
+
+    /**
+     * @param regularExpressions patterns keyed by definition URL; matches are reported in the map's iteration order
+     */
+    public DefinitionMatcher(Map<String, Pattern> regularExpressions) {
+        this(regularExpressions, Engine.REGEX);
+    }
+
+    public DefinitionMatcher(Map<String, Pattern> regularExpressions, Engine engine) {
+        this(regularExpressions, engine, false);
+    }
+
+    /**
+     * @param profile whether to time every pattern run, see {@link #getProfile()}
+     */
+    public DefinitionMatcher(Map<String, Pattern> regularExpressions, Engine engine, boolean profile) {
+        this(regularExpressions, engine, profile, 0);
+    }
+
+    /**
+     * @param budgetMillis how long one pattern may run on one line before it is given up on, or 0 for no limit
+     */
+    public DefinitionMatcher(Map<String, Pattern> regularExpressions, Engine engine, boolean profile, long budgetMillis) {
+        int size = regularExpressions.size();
+        urls = new String[size];
+        patterns = new Pattern[size];
+        NfaCompiler compiler = new NfaCompiler();
+        List<Integer> compiled = new ArrayList<>();
+
+        List<String> literals = new ArrayList<>();
+        Map<String, Integer> literalIds = new HashMap<>();
+        List<List<Integer>> owners = new ArrayList<>();
+        List<Integer> unfiltered = new ArrayList<>();
+        Set<String> byteLiterals = new LinkedHashSet<>();
+        String[][] gateLiterals = new String[size][];
+        boolean byteFilter = true;
+        int index = 0;
+        for (Map.Entry<String, Pattern> entry : regularExpressions.entrySet()) {
+            urls[index] = entry.getKey();
+            patterns[index] = entry.getValue();
+            List<String> required = LiteralExtractor.extract(entry.getValue().pattern());
+            if (required == null) {
+                byteFilter = false;
+            } else {
+                for (String literal : required) {
+                    byte[] utf8 = literal.getBytes(StandardCharsets.UTF_8);
+                    // Lone surrogates do not survive encoding, and U+FFFD also stands in for malformed input,
+                    // so literals with either cannot be looked for in bytes
+                    byteFilter &= literal.indexOf('\uFFFD') < 0 && new String(utf8, StandardCharsets.UTF_8).equals(literal);
+                    byteLiterals.add(new String(utf8, StandardCharsets.ISO_8859_1));
+                }
+            }
+            if (engine == Engine.DFA && compiler.add(entry.getValue().pattern()) >= 0) {
+                compiled.add(index++);
+                continue;
+            }
+            if (required == null) {
+                unfiltered.add(index);
+            } else {
+                gateLiterals[index] = gateLiterals(entry.getValue().pattern(), required);
+                for (String literal : required) {
+                    Integer id = literalIds.get(literal);
+                    if (id == null) {
+                        id = literals.size();
+                        literalIds.put(literal, id);
+                        literals.add(literal);
+                        owners.add(new ArrayList<>());
+                    }
+                    owners.get(id).add(index);
+                }
+            }
+            index++;
+        }
+
+        literalPatterns = new int[owners.size()][];
+        for (int i = 0; i < literalPatterns.length; i++) {
+            literalPatterns[i] = owners.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        alwaysRun = unfiltered.stream().mapToInt(Integer::intValue).toArray();
+        prefilter = new AhoCorasick(literals);
+        dfa = compiled.isEmpty() ? null : new MultiPatternDfa(compiler.build());
+        dfaPatterns = compiled.stream().mapToInt(Integer::intValue).toArray();
+        bytePrefilter = byteFilter ? new AhoCorasick(new ArrayList<>(byteLiterals)) : null;
+        candidates = ThreadLocal.withInitial(() -> new Candidates(patterns, new PatternGates(gateLiterals)));
+        boolean[] combined = new boolean[size];
+        for (int pattern : dfaPatterns) {
+            combined[pattern] = true;
+        }
+        this.profile = profile ? new PatternProfile(urls, combined) : null;
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+    }
+
+    /**
+     * The literals a single-branch pattern requires besides the one the prefilter looks for, or null if there are none.
+     */
+    private static String[] gateLiterals(String regex, List<String> required) {
+        List<String> all = required.size() == 1 ? LiteralExtractor.extractAll(regex) : null;
+        if (all == null) {
+            return null;
+        }
+        all.remove(required.get(0));
+        return all.isEmpty() ? null : all.toArray(new String[0]);
+    }
+
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * The URL of a pattern, numbered in the iteration order of the map the matcher was created from.
+     */
+    public String getUrl(int pattern) {
+        return urls[pattern];
+    }
+
+    /**
+     * Number of patterns that are always run because no required literal could be extracted.
+     */
+    public int getUnfilteredCount() {
+        return alwaysRun.length;
+    }
+
+    /**
+     * Number of patterns handled by the combined automaton rather than java.util.regex.
+     */
+    public int getCombinedCount() {
+        return dfaPatterns.length;
+    }
+
+    /**
+     * The cost of each pattern so far, or null if the matcher was not created to profile.
+     */
+    public PatternProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns false only if the line, given as UTF-8, cannot match any definition because it contains none of the
+     * literals they require. Malformed UTF-8 decodes to U+FFFD, which no extracted literal contains, so skipping
+     * such lines is safe too.
+     */
+    public boolean mayMatch(byte[] utf8, int offset, int length) {
+        return bytePrefilter == null || bytePrefilter.containsAny(utf8, offset, length);
+    }
+
+    /**
+     * Calls the consumer with the URL of every definition whose pattern is found in the line.
+     * Patterns that run out of their time budget count as not found.
+     */
+    public void match(CharSequence line, Consumer<String> onMatch) {
+        match(line, onMatch, url -> { });
+    }
+
+    /**
+     * As {@link #match(CharSequence, Consumer)}, also calling onTimeout with the URL of every definition whose
+     * pattern was given up on because it ran out of its time budget on this line.
+     */
+    public void match(CharSequence line, Consumer<String> onMatch, Consumer<String> onTimeout) {
+        Candidates found = select(line);
+        for (int i = 0; i < found.count; i++) {
+            int pattern = found.indexes[i];
+            int outcome = run(found, pattern, found.isConfirmed(pattern), line);
+            if (outcome == FOUND) {
+                onMatch.accept(urls[pattern]);
+            } else if (outcome == TIMED_OUT) {
+                onTimeout.accept(urls[pattern]);
+            }
+        }
+    }
+
+    /**
+     * Lists the patterns that have to be run on the line, in order, so that running them can be shared out between
+     * threads with {@link #runCandidate}. A pattern the automaton has already confirmed is listed as its complement.
+     */
+    public int[] candidates(CharSequence line) {
+        Candidates found = select(line);
+        int[] listed = new int[found.count];
+        for (int i = 0; i < found.count; i++) {
+            int pattern = found.indexes[i];
+            listed[i] = found.isConfirmed(pattern) ? ~pattern : pattern;
+        }
+        return listed;
+    }
+
+    /**
+     * Runs one pattern listed by {@link #candidates} on the line, on any thread, reporting it by number.
+     */
+    public void runCandidate(CharSequence line, int candidate, IntConsumer onMatch, IntConsumer onTimeout) {
+        int pattern = candidate < 0 ? ~candidate : candidate;
+        int outcome = run(candidates.get(), pattern, candidate < 0, line);
+        if (outcome == FOUND) {
+            onMatch.accept(pattern);
+        } else if (outcome == TIMED_OUT) {
+            onTimeout.accept(pattern);
+        }
+    }
+
+    /**
+     * Lists the patterns that have to be looked at for the line, in order, in this thread's scratch space.
+     */
+    private Candidates select(CharSequence line) {
+        Candidates found = candidates.get();
+        found.reset();
+        found.gates.line();
+        if (dfa != null && !dfa.scan(line, pattern -> found.confirm(dfaPatterns[pattern]))) {
+            for (int pattern : dfaPatterns) {
+                found.add(pattern);
+            }
+        }
+        prefilter.search(line, literal -> {
+            for (int pattern : literalPatterns[literal]) {
+                found.add(pattern);
+            }
+        });
+        for (int pattern : alwaysRun) {
+            found.add(pattern);
+        }
+        found.sort();
+        return found;
+    }
+
+    private int run(Candidates found, int pattern, boolean confirmed, CharSequence line) {
+        if (!confirmed && !found.gates.admits(pattern, line)) {
+            return MISSED;
+        }
+        try {
+            boolean hit = profile != null ? profiledMatch(found, pattern, confirmed, line) : confirmed || find(found, pattern, line);
+            return hit ? FOUND : MISSED;
+        } catch (GuardedSequence.MatchTimeoutException e) {
+            return TIMED_OUT;
+        }
+    }
+
+    private boolean profiledMatch(Candidates found, int pattern, boolean confirmed, CharSequence line) {
+        if (confirmed) {
+            profile.confirmed(pattern);
+            return true;
+        }
+        long started = System.nanoTime();
+        boolean hit = false;
+        try {
+            hit = find(found, pattern, line);
+        } finally {
+            profile.run(pattern, System.nanoTime() - started, hit);
+        }
+        return hit;
+    }
+
+    private boolean find(Candidates found, int pattern, CharSequence line) {
+        boolean sampled = found.gates.sample(pattern);
+        long started = sampled || budgetNanos > 0 ? System.nanoTime() : 0;
+        if (budgetNanos > 0) {
+            line = found.guard.reset(line, started + budgetNanos);
+        }
+        boolean hit = false;
+        try {
+            hit = found.matcher(pattern).reset(line).find();
+        } finally {
+            // A run that times out still counts, as the most expensive kind of miss
+            found.gates.ran(pattern, hit, sampled ? System.nanoTime() - started : -1);
+        }
+        return hit;
+    }
+
+    /**
+     * Per-thread scratch space listing the patterns selected for the current line, without clearing an array per line.
+     * Confirmed patterns are already known to match; the rest still have to be run, each with a Matcher that is
+     * created once per thread and reset for every line.
+     */
+    private static class Candidates {
+        private final Pattern[] patterns;
+        private final Matcher[] matchers;
+        private final GuardedSequence guard = new GuardedSequence();
+        private final PatternGates gates;
+        private final int[] marks;
+        private final int[] confirmed;
+        private final int[] indexes;
+        private int stamp;
+        private int count;
+
+        Candidates(Pattern[] patterns, PatternGates gates) {
+            this.patterns = patterns;
+            this.gates = gates;
+            matchers = new Matcher[patterns.length];
+            marks = new int[patterns.length];
+            confirmed = new int[patterns.length];
+            indexes = new int[patterns.length];
+        }
+
+        void reset() {
+            count = 0;
+            if (++stamp == 0) {
+                Arrays.fill(marks, 0);
+                Arrays.fill(confirmed, 0);
+                stamp = 1;
+            }
+        }
+
+        void add(int pattern) {
+            if (marks[pattern] != stamp) {
+                marks[pattern] = stamp;
+                indexes[count++] = pattern;
+            }
+        }
+
+        void confirm(int pattern) {
+            add(pattern);
+            confirmed[pattern] = stamp;
+        }
+
+        boolean isConfirmed(int pattern) {
+            return confirmed[pattern] == stamp;
+        }
+
+        Matcher matcher(int pattern) {
+            if (matchers[pattern] == null) {
+                matchers[pattern] = patterns[pattern].matcher("");
+            }
+            return matchers[pattern];
+        }
+
+        void sort() {
+            Arrays.sort(indexes, 0, count);
+        }
+    }
+}
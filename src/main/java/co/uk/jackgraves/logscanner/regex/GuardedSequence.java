@@ -0,0 +1,61 @@
+package co.uk.jackgraves.logscanner.regex;
+
+/**
+ * A line that gives up once a deadline has passed: java.util.regex reads its input through charAt, so a match
+ * that backtracks for too long is stopped by throwing from there. The clock is only read every so many chars.
+ *
+ * Reused for every run on a thread; not thread safe.
+ */
+final class GuardedSequence implements CharSequence {
+    private static final int CHECK_INTERVAL = 1024;
+
+    private CharSequence text;
+    private long deadline;
+    private int countdown;
+
+    GuardedSequence reset(CharSequence text, long deadline) {
+        this.text = text;
+        this.deadline = deadline;
+        this.countdown = CHECK_INTERVAL;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return text.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--countdown <= 0) {
+            countdown = CHECK_INTERVAL;
+            if (System.nanoTime() - deadline > 0) {
+                throw MatchTimeoutException.INSTANCE;
+            }
+        }
+        return text.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return text.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    /**
+     * Thrown out of a match that ran past its deadline. It carries no stack trace, so one instance serves every thread.
+     */
+    static final class MatchTimeoutException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        static final MatchTimeoutException INSTANCE = new MatchTimeoutException();
+
+        private MatchTimeoutException() {
+            super("Match time budget exceeded", null, false, false);
+        }
+    }
+}
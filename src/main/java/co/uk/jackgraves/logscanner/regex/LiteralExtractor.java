@@ -0,0 +1,349 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds literal text that must appear in any line matched by a regular expression.
+ *
+ * The extraction is deliberately conservative: anything that is not obviously a plain character
+ * (classes, groups, escapes such as \d, optional quantifiers) ends the current literal run, and inline
+ * flags at the top level (e.g. (?i)) make the whole expression unsuitable for prefiltering.
+ */
+public final class LiteralExtractor {
+    public static final int MIN_LENGTH = 3;
+
+    private LiteralExtractor() {
+    }
+
+    /**
+     * Returns one required literal per top-level alternative (at least one of them must be present in
+     * a matching line), or null if no useful literal can be proven for every alternative.
+     */
+    public static List<String> extract(String regex) {
+        List<String> branches = splitAlternatives(regex);
+        if (branches == null) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>(branches.size());
+        for (String branch : branches) {
+            String literal = longestLiteral(branch);
+            if (literal == null || literal.length() < MIN_LENGTH) {
+                return null;
+            }
+            literals.add(literal);
+        }
+        return literals;
+    }
+
+    /**
+     * Returns every literal of at least {@link #MIN_LENGTH} that a matching line must contain, longest first, or null
+     * if the expression has top-level alternatives or none can be proven. Unlike {@link #extract(String)}, all of
+     * them must be present at once.
+     */
+    public static List<String> extractAll(String regex) {
+        List<String> branches = splitAlternatives(regex);
+        if (branches == null || branches.size() != 1) {
+            return null;
+        }
+        List<String> runs = literalRuns(branches.get(0));
+        if (runs == null) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        for (String run : runs) {
+            if (run.length() >= MIN_LENGTH && !literals.contains(run)) {
+                literals.add(run);
+            }
+        }
+        literals.sort(Comparator.comparingInt(String::length).reversed());
+        return literals.isEmpty() ? null : literals;
+    }
+
+    private static List<String> splitAlternatives(String regex) {
+        List<String> branches = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i = skipEscape(regex, i);
+                continue;
+            }
+            if (c == '[') {
+                i = skipClass(regex, i);
+                if (i < 0) {
+                    return null;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth < 0) {
+                    return null;
+                }
+            } else if (c == '|' && depth == 0) {
+                branches.add(regex.substring(start, i));
+                start = i + 1;
+            }
+            i++;
+        }
+        if (depth != 0) {
+            return null;
+        }
+        branches.add(regex.substring(start));
+        return branches;
+    }
+
+    private static String longestLiteral(String branch) {
+        List<String> runs = literalRuns(branch);
+        if (runs == null) {
+            return null;
+        }
+        String best = "";
+        for (String run : runs) {
+            if (run.length() > best.length()) {
+                best = run;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The runs of plain characters in a branch, in order, each of which a match must contain.
+     */
+    private static List<String> literalRuns(String branch) {
+        StringBuilder current = new StringBuilder();
+        List<String> runs = new ArrayList<>();
+        int i = 0;
+        while (i < branch.length()) {
+            char c = branch.charAt(i);
+            if (c == '\\') {
+                char next = i + 1 < branch.length() ? branch.charAt(i + 1) : 0;
+                if (next == 'Q') {
+                    int end = branch.indexOf("\\E", i + 2);
+                    String quoted = end < 0 ? branch.substring(i + 2) : branch.substring(i + 2, end);
+                    i = end < 0 ? branch.length() : end + 2;
+                    if (quoted.isEmpty()) {
+                        continue;
+                    }
+                    current.append(quoted, 0, quoted.length() - 1);
+                    appendLiteral(current, runs, quoted.charAt(quoted.length() - 1), branch, i);
+                    i = skipQuantifier(branch, i);
+                    continue;
+                }
+                char literal = escapedLiteral(next);
+                i = skipEscape(branch, i);
+                if (literal == 0) {
+                    flush(current, runs);
+                    i = skipQuantifier(branch, i);
+                } else {
+                    appendLiteral(current, runs, literal, branch, i);
+                    i = skipQuantifier(branch, i);
+                }
+                continue;
+            }
+            switch (c) {
+                case '[':
+                    i = skipClass(branch, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    flush(current, runs);
+                    i = skipQuantifier(branch, i);
+                    break;
+                case '(':
+                    if (isFlagGroup(branch, i)) {
+                        return null;
+                    }
+                    i = skipGroup(branch, i);
+                    if (i < 0) {
+                        return null;
+                    }
+                    flush(current, runs);
+                    i = skipQuantifier(branch, i);
+                    break;
+                case '.':
+                case '^':
+                case '$':
+                    flush(current, runs);
+                    i = skipQuantifier(branch, i + 1);
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    flush(current, runs);
+                    i = skipQuantifier(branch, i);
+                    break;
+                case ')':
+                    return null;
+                default:
+                    appendLiteral(current, runs, c, branch, i + 1);
+                    i = skipQuantifier(branch, i + 1);
+            }
+        }
+        flush(current, runs);
+        return runs;
+    }
+
+    /**
+     * Appends a literal character whose token ends at the given index, taking any following quantifier into account.
+     */
+    private static void appendLiteral(StringBuilder current, List<String> runs, char c, String branch, int next) {
+        char quantifier = next < branch.length() ? branch.charAt(next) : 0;
+        if (quantifier == '*' || quantifier == '?' || quantifier == '{') {
+            flush(current, runs);
+            return;
+        }
+        current.append(c);
+        if (quantifier == '+') {
+            flush(current, runs);
+        }
+    }
+
+    private static void flush(StringBuilder current, List<String> runs) {
+        if (current.length() > 0) {
+            runs.add(current.toString());
+        }
+        current.setLength(0);
+    }
+
+    private static char escapedLiteral(char c) {
+        switch (c) {
+            case 't': return '\t';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 'f': return '\f';
+            case 'a': return '\u0007';
+            case 'e': return '\u001B';
+            default:
+                return c != 0 && !Character.isLetterOrDigit(c) ? c : 0;
+        }
+    }
+
+    private static boolean isFlagGroup(String regex, int i) {
+        if (i + 2 >= regex.length() || regex.charAt(i + 1) != '?') {
+            return false;
+        }
+        char c = regex.charAt(i + 2);
+        return Character.isLetter(c) || c == '-';
+    }
+
+    /**
+     * Returns the index just after the escape sequence starting at i, including any arguments it takes.
+     */
+    private static int skipEscape(String regex, int i) {
+        int j = i + 2;
+        if (j > regex.length()) {
+            return regex.length();
+        }
+        switch (regex.charAt(i + 1)) {
+            case 'Q':
+                int end = regex.indexOf("\\E", j);
+                return end < 0 ? regex.length() : end + 2;
+            case 'x':
+            case 'p':
+            case 'P':
+                if (j < regex.length() && regex.charAt(j) == '{') {
+                    return closing(regex, j, '}');
+                }
+                return Math.min(j + (regex.charAt(i + 1) == 'x' ? 2 : 1), regex.length());
+            case 'k':
+                return j < regex.length() && regex.charAt(j) == '<' ? closing(regex, j, '>') : j;
+            case 'u':
+                return Math.min(j + 4, regex.length());
+            case 'c':
+                return Math.min(j + 1, regex.length());
+            case '0':
+                return skipDigits(regex, j, 3);
+            default:
+                return Character.isDigit(regex.charAt(i + 1)) ? skipDigits(regex, j, Integer.MAX_VALUE) : j;
+        }
+    }
+
+    private static int closing(String regex, int i, char c) {
+        int end = regex.indexOf(c, i);
+        return end < 0 ? regex.length() : end + 1;
+    }
+
+    private static int skipDigits(String regex, int i, int max) {
+        while (max-- > 0 && i < regex.length() && Character.isDigit(regex.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int skipClass(String regex, int i) {
+        int depth = 0;
+        int j = i;
+        while (j < regex.length()) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j = skipEscape(regex, j);
+                continue;
+            }
+            if (c == '[') {
+                depth++;
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == '^') {
+                    j++;
+                }
+                if (j + 1 < regex.length() && regex.charAt(j + 1) == ']') {
+                    j++;
+                }
+            } else if (c == ']' && --depth == 0) {
+                return j + 1;
+            }
+            j++;
+        }
+        return -1;
+    }
+
+    private static int skipGroup(String regex, int i) {
+        int depth = 0;
+        int j = i;
+        while (j < regex.length()) {
+            char c = regex.charAt(j);
+            if (c == '\\') {
+                j = skipEscape(regex, j);
+                continue;
+            }
+            if (c == '[') {
+                j = skipClass(regex, j);
+                if (j < 0) {
+                    return -1;
+                }
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return j + 1;
+            }
+            j++;
+        }
+        return -1;
+    }
+
+    private static int skipQuantifier(String regex, int i) {
+        if (i >= regex.length()) {
+            return i;
+        }
+        char c = regex.charAt(i);
+        if (c == '*' || c == '+' || c == '?') {
+            i++;
+        } else if (c == '{') {
+            int end = regex.indexOf('}', i);
+            i = end < 0 ? regex.length() : end + 1;
+        } else {
+            return i;
+        }
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            i++;
+        }
+        return i;
+    }
+}
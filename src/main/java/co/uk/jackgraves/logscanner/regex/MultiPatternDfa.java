@@ -0,0 +1,361 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Lazily built DFA over a combined {@link Nfa}, reporting every pattern that occurs anywhere in a line
+ * in a single pass over its characters (find semantics, as with Matcher.find).
+ *
+ * The start states of all patterns are implicitly present at every position, so they are kept out of the
+ * DFA states themselves; that keeps states small and makes the automaton behave like Aho-Corasick for the
+ * common case of mostly literal patterns. DFA states are built on demand and cached per thread; the cache
+ * is dropped and rebuilt when it grows past a fixed number of states.
+ */
+public class MultiPatternDfa {
+    private static final int MAX_STATES = 10000;
+    private static final int ASCII = 128;
+    private static final int[] NONE = new int[0];
+
+    private final Nfa nfa;
+    private final boolean[] restart;
+    private final int[] restartNodes;
+    private final int[] restartMatches;
+    private final int[] restartEnds;
+    private final int[][] endMatches;
+    private final int[][] terminatorMatches;
+    private final ThreadLocal<Cache> caches;
+
+    public MultiPatternDfa(Nfa nfa) {
+        this.nfa = nfa;
+        this.restart = new boolean[nfa.size()];
+        this.endMatches = new int[nfa.size()][];
+        this.terminatorMatches = new int[nfa.size()][];
+
+        // Everything reachable from the pattern starts without consuming input (other than through ^)
+        Deque<Integer> stack = new ArrayDeque<>();
+        for (int start : nfa.starts) {
+            stack.push(start);
+        }
+        List<Integer> important = new ArrayList<>();
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (node < 0 || restart[node] || nfa.types[node] == NfaCompiler.START) {
+                continue;
+            }
+            restart[node] = true;
+            if (nfa.types[node] == NfaCompiler.SPLIT) {
+                stack.push(nfa.out2[node]);
+                stack.push(nfa.out1[node]);
+            } else {
+                important.add(node);
+            }
+        }
+        restartNodes = toArray(important);
+        restartMatches = matchesOf(restartNodes);
+        List<Integer> ends = new ArrayList<>();
+        for (int node : restartNodes) {
+            if (nfa.types[node] == NfaCompiler.END || nfa.types[node] == NfaCompiler.END_INPUT) {
+                ends.add(node);
+            }
+        }
+        restartEnds = toArray(ends);
+
+        for (int node = 0; node < nfa.size(); node++) {
+            if (nfa.types[node] == NfaCompiler.END || nfa.types[node] == NfaCompiler.END_INPUT) {
+                endMatches[node] = reachableMatches(nfa.out1[node], true);
+                terminatorMatches[node] = nfa.types[node] == NfaCompiler.END_INPUT ? NONE : reachableMatches(nfa.out1[node], false);
+            }
+        }
+        caches = ThreadLocal.withInitial(Cache::new);
+    }
+
+    public int patternCount() {
+        return nfa.patternCount();
+    }
+
+    /**
+     * Reports the id of every pattern found in the text (an id may be reported more than once).
+     * Returns false, having possibly reported nothing, if the text contains surrogate pairs: java.util.regex
+     * treats those as single code points, so the caller must fall back to it for such lines.
+     */
+    public boolean scan(CharSequence text, IntConsumer onMatch) {
+        Cache cache = caches.get();
+        int length = text.length();
+        int terminator = length - terminatorLength(text);
+        State state = cache.initial;
+        report(state.matches, onMatch);
+        report(restartMatches, onMatch);
+        for (int i = 0; ; i++) {
+            if (i == terminator && i < length) {
+                reportEnd(state, terminatorMatches, onMatch);
+            }
+            if (i == length) {
+                reportEnd(state, endMatches, onMatch);
+                return true;
+            }
+            char c = text.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return false;
+            }
+            state = cache.step(state, c);
+            report(state.matches, onMatch);
+        }
+    }
+
+    private void reportEnd(State state, int[][] matches, IntConsumer onMatch) {
+        if (state.hasEnd) {
+            for (int node : state.nodes) {
+                if (matches[node] != null) {
+                    report(matches[node], onMatch);
+                }
+            }
+        }
+        for (int node : restartEnds) {
+            report(matches[node], onMatch);
+        }
+    }
+
+    private static void report(int[] patterns, IntConsumer onMatch) {
+        for (int pattern : patterns) {
+            onMatch.accept(pattern);
+        }
+    }
+
+    /**
+     * Length of the final line terminator, before which $ and \Z also match.
+     */
+    private static int terminatorLength(CharSequence text) {
+        int length = text.length();
+        if (length == 0) {
+            return 0;
+        }
+        char last = text.charAt(length - 1);
+        if (last == '\n') {
+            return length > 1 && text.charAt(length - 2) == '\r' ? 2 : 1;
+        }
+        return last == '\r' || last == '\u0085' || last == '\u2028' || last == '\u2029' ? 1 : 0;
+    }
+
+    private int[] matchesOf(int[] nodes) {
+        List<Integer> patterns = new ArrayList<>();
+        for (int node : nodes) {
+            if (nfa.types[node] == NfaCompiler.MATCH) {
+                patterns.add(nfa.out1[node]);
+            }
+        }
+        return toArray(patterns);
+    }
+
+    private int[] reachableMatches(int from, boolean atEnd) {
+        Set<Integer> patterns = new TreeSet<>();
+        boolean[] seen = new boolean[nfa.size()];
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(from);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            if (node < 0 || seen[node]) {
+                continue;
+            }
+            seen[node] = true;
+            switch (nfa.types[node]) {
+                case NfaCompiler.MATCH:
+                    patterns.add(nfa.out1[node]);
+                    break;
+                case NfaCompiler.SPLIT:
+                    stack.push(nfa.out2[node]);
+                    stack.push(nfa.out1[node]);
+                    break;
+                case NfaCompiler.END_INPUT:
+                    if (atEnd) {
+                        stack.push(nfa.out1[node]);
+                    }
+                    break;
+                case NfaCompiler.END:
+                    stack.push(nfa.out1[node]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return toArray(new ArrayList<>(patterns));
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static final class State {
+        final int[] nodes;
+        final int hash;
+        int[] matches = NONE;
+        boolean hasEnd;
+        int generation;
+        State[] ascii;
+        Map<Character, State> other;
+
+        State(int[] nodes) {
+            this.nodes = nodes;
+            this.hash = Arrays.hashCode(nodes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof State && Arrays.equals(nodes, ((State) o).nodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The DFA states built so far by one thread, with the scratch space used to build new ones.
+     */
+    private final class Cache {
+        private final Map<State, State> states = new HashMap<>();
+        private final int[][] restartAscii = new int[ASCII][];
+        private final Map<Character, int[]> restartOther = new HashMap<>();
+        private final int[] visited = new int[nfa.size()];
+        private final int[] stack = new int[nfa.size() * 3 + 16];
+        private int[] seeds = new int[16];
+        private int stamp;
+        private int generation;
+        private State initial;
+
+        Cache() {
+            initial = intern(closure(nfa.starts, nfa.starts.length, true));
+        }
+
+        State step(State state, char c) {
+            if (state.generation != generation) {
+                state = intern(state.nodes);
+            }
+            State next = c < ASCII ? (state.ascii == null ? null : state.ascii[c]) : (state.other == null ? null : state.other.get(c));
+            if (next != null) {
+                return next;
+            }
+            int count = 0;
+            for (int node : state.nodes) {
+                if (nfa.types[node] == NfaCompiler.CHARS && CharRanges.contains(nfa.ranges[node], c)) {
+                    count = addSeed(count, nfa.out1[node]);
+                }
+            }
+            for (int node : restartMoves(c)) {
+                count = addSeed(count, node);
+            }
+            if (states.size() >= MAX_STATES) {
+                states.clear();
+                generation++;
+                initial = intern(initial.nodes);
+            }
+            next = intern(closure(seeds, count, false));
+            if (c < ASCII) {
+                if (state.ascii == null) {
+                    state.ascii = new State[ASCII];
+                }
+                state.ascii[c] = next;
+            } else {
+                if (state.other == null) {
+                    state.other = new HashMap<>();
+                }
+                state.other.put(c, next);
+            }
+            return next;
+        }
+
+        private int addSeed(int count, int node) {
+            if (count == seeds.length) {
+                seeds = Arrays.copyOf(seeds, count * 2);
+            }
+            seeds[count] = node;
+            return count + 1;
+        }
+
+        private int[] restartMoves(char c) {
+            int[] moves = c < ASCII ? restartAscii[c] : restartOther.get(c);
+            if (moves == null) {
+                List<Integer> targets = new ArrayList<>();
+                for (int node : restartNodes) {
+                    if (nfa.types[node] == NfaCompiler.CHARS && CharRanges.contains(nfa.ranges[node], c)) {
+                        targets.add(nfa.out1[node]);
+                    }
+                }
+                moves = toArray(targets);
+                if (c < ASCII) {
+                    restartAscii[c] = moves;
+                } else {
+                    restartOther.put(c, moves);
+                }
+            }
+            return moves;
+        }
+
+        /**
+         * Epsilon closure of the seeds, keeping only the nodes that matter to a DFA state and leaving out
+         * those that are implicitly present through the restart set.
+         */
+        private int[] closure(int[] from, int count, boolean atStart) {
+            if (++stamp == 0) {
+                Arrays.fill(visited, 0);
+                stamp = 1;
+            }
+            int top = 0;
+            for (int i = 0; i < count; i++) {
+                stack[top++] = from[i];
+            }
+            int[] result = new int[8];
+            int size = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                if (node < 0 || visited[node] == stamp || (!atStart && restart[node])) {
+                    continue;
+                }
+                visited[node] = stamp;
+                switch (nfa.types[node]) {
+                    case NfaCompiler.SPLIT:
+                        stack[top++] = nfa.out2[node];
+                        stack[top++] = nfa.out1[node];
+                        break;
+                    case NfaCompiler.START:
+                        if (atStart) {
+                            stack[top++] = nfa.out1[node];
+                        }
+                        break;
+                    default:
+                        if (!restart[node]) {
+                            if (size == result.length) {
+                                result = Arrays.copyOf(result, size * 2);
+                            }
+                            result[size++] = node;
+                        }
+                }
+            }
+            result = Arrays.copyOf(result, size);
+            Arrays.sort(result);
+            return result;
+        }
+
+        private State intern(int[] nodes) {
+            State state = new State(nodes);
+            State existing = states.get(state);
+            if (existing != null) {
+                return existing;
+            }
+            state.generation = generation;
+            state.matches = matchesOf(nodes);
+            for (int node : nodes) {
+                if (nfa.types[node] == NfaCompiler.END || nfa.types[node] == NfaCompiler.END_INPUT) {
+                    state.hasEnd = true;
+                }
+            }
+            states.put(state, state);
+            return state;
+        }
+    }
+}
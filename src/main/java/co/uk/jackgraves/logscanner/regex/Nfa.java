@@ -0,0 +1,29 @@
+package co.uk.jackgraves.logscanner.regex;
+
+/**
+ * Immutable Thompson NFA produced by {@link NfaCompiler}. Node types are the constants on NfaCompiler;
+ * for MATCH nodes out1 holds the pattern id.
+ */
+final class Nfa {
+    final int[] types;
+    final int[] out1;
+    final int[] out2;
+    final int[][] ranges;
+    final int[] starts;
+
+    Nfa(int[] types, int[] out1, int[] out2, int[][] ranges, int[] starts) {
+        this.types = types;
+        this.out1 = out1;
+        this.out2 = out2;
+        this.ranges = ranges;
+        this.starts = starts;
+    }
+
+    int size() {
+        return types.length;
+    }
+
+    int patternCount() {
+        return starts.length;
+    }
+}
@@ -0,0 +1,585 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiles the subset of java.util.regex syntax that can be run as an automaton into a single Thompson NFA
+ * shared by many patterns.
+ *
+ * Supported: literals and escapes, character classes (without nesting or intersection), the predefined classes
+ * \d \w \s and their negations, '.', alternation, capturing, named and non-capturing groups, greedy and lazy
+ * quantifiers, the anchors ^ $ \A \Z \z, and the inline flags i and s. Anything else (backreferences, lookaround,
+ * word boundaries, possessive quantifiers, atomic groups, other flags) is rejected so that the pattern can fall
+ * back to java.util.regex. Matching existence does not depend on greediness, which is why lazy quantifiers are fine.
+ */
+public class NfaCompiler {
+    static final int CHARS = 0;
+    static final int SPLIT = 1;
+    static final int MATCH = 2;
+    static final int START = 3;
+    static final int END = 4;
+    static final int END_INPUT = 5;
+
+    private static final int MAX_REPEAT = 64;
+    private static final int MAX_NODES_PER_PATTERN = 10000;
+    private static final int FLAG_CASE_INSENSITIVE = 1;
+    private static final int FLAG_DOTALL = 2;
+
+    private static final int[] ANY = {0, Character.MAX_VALUE};
+    private static final int[] DIGIT = {'0', '9'};
+    private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+    private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+    private static final int[] LINE_TERMINATORS = {'\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029'};
+
+    private final List<int[]> ranges = new ArrayList<>();
+    private int[] types = new int[64];
+    private int[] out1 = new int[64];
+    private int[] out2 = new int[64];
+    private int size;
+    private final List<Integer> starts = new ArrayList<>();
+
+    /**
+     * Adds a pattern to the NFA, returning its id (the order in which patterns were accepted), or -1 if the
+     * pattern uses a feature the automaton cannot handle. A rejected pattern leaves the NFA unchanged.
+     */
+    public int add(String regex) {
+        int mark = size;
+        try {
+            Node tree = new Parser(regex).parse();
+            int id = starts.size();
+            int match = node(MATCH, id, -1, null);
+            int start = compile(tree, match, mark);
+            checkEndAnchors(mark);
+            starts.add(start);
+            return id;
+        } catch (Unsupported e) {
+            size = mark;
+            while (ranges.size() > size) {
+                ranges.remove(ranges.size() - 1);
+            }
+            return -1;
+        }
+    }
+
+    public Nfa build() {
+        int[] startArray = new int[starts.size()];
+        for (int i = 0; i < startArray.length; i++) {
+            startArray[i] = starts.get(i);
+        }
+        return new Nfa(Arrays.copyOf(types, size), Arrays.copyOf(out1, size), Arrays.copyOf(out2, size),
+                ranges.toArray(new int[size][]), startArray);
+    }
+
+    private int node(int type, int a, int b, int[] chars) {
+        if (size == types.length) {
+            types = Arrays.copyOf(types, size * 2);
+            out1 = Arrays.copyOf(out1, size * 2);
+            out2 = Arrays.copyOf(out2, size * 2);
+        }
+        types[size] = type;
+        out1[size] = a;
+        out2[size] = b;
+        ranges.add(chars);
+        return size++;
+    }
+
+    private int compile(Node tree, int next, int mark) throws Unsupported {
+        if (size - mark > MAX_NODES_PER_PATTERN) {
+            throw new Unsupported();
+        }
+        switch (tree.kind) {
+            case Node.CHARS:
+                return node(CHARS, next, -1, tree.chars);
+            case Node.ANCHOR:
+                return node(tree.min, next, -1, null);
+            case Node.CONCAT:
+                for (int i = tree.children.size() - 1; i >= 0; i--) {
+                    next = compile(tree.children.get(i), next, mark);
+                }
+                return next;
+            case Node.ALTERNATE:
+                int branch = compile(tree.children.get(tree.children.size() - 1), next, mark);
+                for (int i = tree.children.size() - 2; i >= 0; i--) {
+                    branch = node(SPLIT, compile(tree.children.get(i), next, mark), branch, null);
+                }
+                return branch;
+            case Node.REPEAT:
+                Node child = tree.children.get(0);
+                int current = next;
+                if (tree.max < 0) {
+                    int loop = node(SPLIT, -1, next, null);
+                    int body = compile(child, loop, mark);
+                    out1[loop] = body;
+                    current = loop;
+                } else {
+                    for (int i = tree.min; i < tree.max; i++) {
+                        current = node(SPLIT, compile(child, current, mark), next, null);
+                    }
+                }
+                for (int i = 0; i < tree.min; i++) {
+                    current = compile(child, current, mark);
+                }
+                return current;
+            default:
+                return next;
+        }
+    }
+
+    /**
+     * Input can only be matched up to an end anchor, so nothing but other anchors may follow one.
+     */
+    private void checkEndAnchors(int mark) throws Unsupported {
+        for (int node = mark; node < size; node++) {
+            if (types[node] == END || types[node] == END_INPUT) {
+                checkOnlyAnchorsFollow(out1[node], new boolean[size]);
+            }
+        }
+    }
+
+    private void checkOnlyAnchorsFollow(int node, boolean[] seen) throws Unsupported {
+        if (node < 0 || seen[node]) {
+            return;
+        }
+        seen[node] = true;
+        switch (types[node]) {
+            case CHARS:
+            case START:
+                throw new Unsupported();
+            case SPLIT:
+                checkOnlyAnchorsFollow(out1[node], seen);
+                checkOnlyAnchorsFollow(out2[node], seen);
+                break;
+            case END:
+            case END_INPUT:
+                checkOnlyAnchorsFollow(out1[node], seen);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static class Unsupported extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class Node {
+        static final int CHARS = 0;
+        static final int CONCAT = 1;
+        static final int ALTERNATE = 2;
+        static final int REPEAT = 3;
+        static final int ANCHOR = 4;
+
+        final int kind;
+        final List<Node> children = new ArrayList<>();
+        int[] chars;
+        int min;
+        int max;
+
+        Node(int kind) {
+            this.kind = kind;
+        }
+
+        boolean isNullable() {
+            switch (kind) {
+                case CHARS:
+                    return false;
+                case CONCAT:
+                    for (Node child : children) {
+                        if (!child.isNullable()) {
+                            return false;
+                        }
+                    }
+                    return true;
+                case ALTERNATE:
+                    for (Node child : children) {
+                        if (child.isNullable()) {
+                            return true;
+                        }
+                    }
+                    return false;
+                case REPEAT:
+                    return min == 0 || children.get(0).isNullable();
+                default:
+                    return true;
+            }
+        }
+
+        static Node chars(int[] chars) {
+            Node node = new Node(CHARS);
+            node.chars = chars;
+            return node;
+        }
+    }
+
+    /**
+     * Recursive descent parser producing the pattern tree; flags follow java.util.regex scoping,
+     * lasting until the end of the enclosing group.
+     */
+    private static class Parser {
+        private final String regex;
+        private int pos;
+        private int flags;
+
+        Parser(String regex) {
+            this.regex = regex;
+        }
+
+        Node parse() throws Unsupported {
+            Node tree = alternation();
+            if (pos != regex.length()) {
+                throw new Unsupported();
+            }
+            return tree;
+        }
+
+        private Node alternation() throws Unsupported {
+            Node first = concatenation();
+            if (!peek('|')) {
+                return first;
+            }
+            Node node = new Node(Node.ALTERNATE);
+            node.children.add(first);
+            while (peek('|')) {
+                pos++;
+                node.children.add(concatenation());
+            }
+            return node;
+        }
+
+        private Node concatenation() throws Unsupported {
+            Node node = new Node(Node.CONCAT);
+            while (pos < regex.length() && !peek('|') && !peek(')')) {
+                Node atom = atom();
+                if (atom != null) {
+                    node.children.add(quantified(atom));
+                }
+            }
+            return node;
+        }
+
+        private Node quantified(Node atom) throws Unsupported {
+            if (pos < regex.length()) {
+                int min;
+                int max;
+                char c = regex.charAt(pos);
+                if (c == '*') {
+                    min = 0;
+                    max = -1;
+                    pos++;
+                } else if (c == '+') {
+                    min = 1;
+                    max = -1;
+                    pos++;
+                } else if (c == '?') {
+                    min = 0;
+                    max = 1;
+                    pos++;
+                } else if (c == '{') {
+                    int end = regex.indexOf('}', pos);
+                    if (end < 0) {
+                        throw new Unsupported();
+                    }
+                    String[] bounds = regex.substring(pos + 1, end).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0].trim());
+                        max = bounds.length == 1 ? min : bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+                    } catch (NumberFormatException e) {
+                        throw new Unsupported();
+                    }
+                    if (bounds.length > 2 || min > MAX_REPEAT || max > MAX_REPEAT) {
+                        throw new Unsupported();
+                    }
+                    pos = end + 1;
+                } else {
+                    return atom;
+                }
+                if (peek('+')) {
+                    throw new Unsupported();
+                }
+                if (peek('?')) {
+                    pos++;
+                }
+                // java.util.regex special-cases repeated empty matches, so a body that can match nothing is left to it,
+                // as are stacked quantifiers such as a+{2}
+                if (atom.kind == Node.ANCHOR || (max != 1 && atom.isNullable())
+                        || (pos < regex.length() && "*+?{".indexOf(regex.charAt(pos)) >= 0)) {
+                    throw new Unsupported();
+                }
+                Node repeat = new Node(Node.REPEAT);
+                repeat.children.add(atom);
+                repeat.min = min;
+                repeat.max = max;
+                return repeat;
+            }
+            return atom;
+        }
+
+        private Node atom() throws Unsupported {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    return Node.chars(characterClass());
+                case '.':
+                    return Node.chars((flags & FLAG_DOTALL) != 0 ? ANY : CharRanges.negate(LINE_TERMINATORS));
+                case '^':
+                    return anchor(START);
+                case '$':
+                    return anchor(END);
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new Unsupported();
+                default:
+                    return literal(c);
+            }
+        }
+
+        private Node group() throws Unsupported {
+            int saved = flags;
+            if (peek('?')) {
+                pos++;
+                if (peek(':')) {
+                    pos++;
+                } else if (peek('<') && pos + 1 < regex.length() && Character.isLetter(regex.charAt(pos + 1))) {
+                    int end = regex.indexOf('>', pos);
+                    if (end < 0) {
+                        throw new Unsupported();
+                    }
+                    pos = end + 1;
+                } else {
+                    boolean on = true;
+                    while (pos < regex.length() && regex.charAt(pos) != ':' && regex.charAt(pos) != ')') {
+                        char flag = regex.charAt(pos++);
+                        if (flag == '-') {
+                            on = false;
+                        } else if (flag == 'i') {
+                            flags = on ? flags | FLAG_CASE_INSENSITIVE : flags & ~FLAG_CASE_INSENSITIVE;
+                        } else if (flag == 's') {
+                            flags = on ? flags | FLAG_DOTALL : flags & ~FLAG_DOTALL;
+                        } else {
+                            throw new Unsupported();
+                        }
+                    }
+                    if (peek(')')) {
+                        // (?i) applies to the rest of the enclosing group rather than opening a new one
+                        pos++;
+                        return null;
+                    }
+                    if (!peek(':')) {
+                        throw new Unsupported();
+                    }
+                    pos++;
+                }
+            }
+            Node inner = alternation();
+            if (!peek(')')) {
+                throw new Unsupported();
+            }
+            pos++;
+            flags = saved;
+            return inner;
+        }
+
+        private Node anchor(int type) {
+            Node node = new Node(Node.ANCHOR);
+            node.min = type;
+            return node;
+        }
+
+        private Node escape() throws Unsupported {
+            if (pos >= regex.length()) {
+                throw new Unsupported();
+            }
+            char c = regex.charAt(pos);
+            switch (c) {
+                case 'A':
+                    pos++;
+                    return anchor(START);
+                case 'Z':
+                    pos++;
+                    return anchor(END);
+                case 'z':
+                    pos++;
+                    return anchor(END_INPUT);
+                case 'Q':
+                    int end = regex.indexOf("\\E", pos);
+                    String quoted = end < 0 ? regex.substring(pos + 1) : regex.substring(pos + 1, end);
+                    pos = end < 0 ? regex.length() : end + 2;
+                    Node node = new Node(Node.CONCAT);
+                    for (int i = 0; i < quoted.length(); i++) {
+                        node.children.add(literal(quoted.charAt(i)));
+                    }
+                    if (node.children.size() > 1 && pos < regex.length() && "*+?{".indexOf(regex.charAt(pos)) >= 0) {
+                        // a quantifier after \E applies to the last quoted character only
+                        Node last = node.children.remove(node.children.size() - 1);
+                        node.children.add(quantified(last));
+                    }
+                    return node;
+                default:
+                    return Node.chars(escapedChars());
+            }
+        }
+
+        /**
+         * Parses an escape (positioned just after the backslash) that stands for a set of characters.
+         */
+        private int[] escapedChars() throws Unsupported {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case 'd': return DIGIT;
+                case 'D': return CharRanges.negate(DIGIT);
+                case 'w': return WORD;
+                case 'W': return CharRanges.negate(WORD);
+                case 's': return SPACE;
+                case 'S': return CharRanges.negate(SPACE);
+                default: return fold(escapedChar(c));
+            }
+        }
+
+        private char escapedChar(char c) throws Unsupported {
+            switch (c) {
+                case 't': return '\t';
+                case 'n': return '\n';
+                case 'r': return '\r';
+                case 'f': return '\f';
+                case 'a': return '\u0007';
+                case 'e': return '\u001B';
+                case 'x':
+                    if (peek('{')) {
+                        throw new Unsupported();
+                    }
+                    return (char) hex(2);
+                case 'u':
+                    return (char) hex(4);
+                case '0':
+                    int value = 0;
+                    int digits = 0;
+                    while (digits < 3 && pos < regex.length() && regex.charAt(pos) >= '0' && regex.charAt(pos) <= '7'
+                            && value * 8 + (regex.charAt(pos) - '0') <= 0377) {
+                        value = value * 8 + (regex.charAt(pos++) - '0');
+                        digits++;
+                    }
+                    if (digits == 0) {
+                        throw new Unsupported();
+                    }
+                    return (char) value;
+                case 'c':
+                    if (pos >= regex.length()) {
+                        throw new Unsupported();
+                    }
+                    return (char) (regex.charAt(pos++) ^ 64);
+                default:
+                    if (Character.isLetterOrDigit(c) || Character.isSurrogate(c)) {
+                        throw new Unsupported();
+                    }
+                    return c;
+            }
+        }
+
+        private int hex(int digits) throws Unsupported {
+            if (pos + digits > regex.length()) {
+                throw new Unsupported();
+            }
+            try {
+                int value = Integer.parseInt(regex.substring(pos, pos + digits), 16);
+                pos += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw new Unsupported();
+            }
+        }
+
+        private int[] characterClass() throws Unsupported {
+            boolean negated = peek('^');
+            if (negated) {
+                pos++;
+            }
+            int[] set = new int[0];
+            boolean first = true;
+            while (true) {
+                if (pos >= regex.length()) {
+                    throw new Unsupported();
+                }
+                char c = regex.charAt(pos);
+                if (c == ']' && !first) {
+                    pos++;
+                    break;
+                }
+                first = false;
+                if (c == '[' || regex.startsWith("&&", pos)) {
+                    throw new Unsupported();
+                }
+                int[] item;
+                char low;
+                pos++;
+                if (c == '\\') {
+                    if (pos >= regex.length()) {
+                        throw new Unsupported();
+                    }
+                    char e = regex.charAt(pos);
+                    if ("dDwWsS".indexOf(e) >= 0) {
+                        set = CharRanges.union(set, escapedChars());
+                        continue;
+                    }
+                    if (e == 'Q') {
+                        throw new Unsupported();
+                    }
+                    pos++;
+                    low = escapedChar(e);
+                } else {
+                    low = c;
+                }
+                if (Character.isSurrogate(low)) {
+                    throw new Unsupported();
+                }
+                if (peek('-') && pos + 1 < regex.length() && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    char high = regex.charAt(pos++);
+                    if (high == '\\') {
+                        if (pos >= regex.length()) {
+                            throw new Unsupported();
+                        }
+                        high = escapedChar(regex.charAt(pos++));
+                    } else if (high == '[') {
+                        throw new Unsupported();
+                    }
+                    if (high < low || Character.isSurrogate(high)) {
+                        throw new Unsupported();
+                    }
+                    item = new int[]{low, high};
+                } else {
+                    item = new int[]{low, low};
+                }
+                set = CharRanges.union(set, (flags & FLAG_CASE_INSENSITIVE) != 0 ? CharRanges.foldAscii(item) : item);
+            }
+            return negated ? CharRanges.negate(set) : set;
+        }
+
+        private Node literal(char c) throws Unsupported {
+            if (Character.isSurrogate(c)) {
+                throw new Unsupported();
+            }
+            return Node.chars(fold(c));
+        }
+
+        private int[] fold(char c) {
+            int[] single = {c, c};
+            return (flags & FLAG_CASE_INSENSITIVE) != 0 ? CharRanges.foldAscii(single) : single;
+        }
+
+        private boolean peek(char c) {
+            return pos < regex.length() && regex.charAt(pos) == c;
+        }
+    }
+}
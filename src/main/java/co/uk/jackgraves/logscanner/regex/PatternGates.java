@@ -0,0 +1,147 @@
+package co.uk.jackgraves.logscanner.regex;
+
+/**
+ * Learns, per thread, which patterns are worth gating behind the other literals they require.
+ *
+ * The prefilter only looks for one literal per pattern, so a pattern such as "Exception.*PKIX path building" is run
+ * on every line mentioning "PKIX path building" even if "Exception" is missing. Checking the remaining literals
+ * first is cheap, but not free, so it is only done for patterns that have proved expensive and rarely match when
+ * run: every pattern counts its runs and hits, and times one run in 16. Every few thousand lines the counts are
+ * reviewed. A pattern that matches fewer than one run in 8 at a mean cost of over a microsecond is gated; a gate
+ * that rejects fewer than one line in 4 is removed again. The counts are then halved, so they follow the log as it
+ * changes. Within a gate the literal that last rejected a line moves forward, so the most selective is checked first.
+ *
+ * Gating never changes the results, as a line without a required literal cannot match.
+ */
+final class PatternGates {
+    private static final int REVIEW_INTERVAL = 4096;
+    private static final int MIN_RUNS = 64;
+    private static final int SAMPLE_MASK = 15;
+    private static final long MIN_GATED_NANOS = 1000;
+    private static final int HIT_RATE = 8;
+    private static final int REJECT_RATE = 4;
+
+    private final String[][] literals;
+    private final boolean[] gated;
+    private final int[] runs;
+    private final int[] hits;
+    private final int[] sampled;
+    private final long[] sampledNanos;
+    private final int[] checks;
+    private final int[] rejects;
+    private int lines;
+
+    /**
+     * @param literals for every pattern, the literals it requires besides the one the prefilter looks for, or null
+     */
+    PatternGates(String[][] literals) {
+        int size = literals.length;
+        this.literals = new String[size][];
+        for (int i = 0; i < size; i++) {
+            // Each thread reorders its own copy
+            this.literals[i] = literals[i] == null ? null : literals[i].clone();
+        }
+        gated = new boolean[size];
+        runs = new int[size];
+        hits = new int[size];
+        sampled = new int[size];
+        sampledNanos = new long[size];
+        checks = new int[size];
+        rejects = new int[size];
+    }
+
+    /**
+     * Called once per line; reviews the gates every {@link #REVIEW_INTERVAL} lines.
+     */
+    void line() {
+        if (++lines == REVIEW_INTERVAL) {
+            lines = 0;
+            review();
+        }
+    }
+
+    /**
+     * Returns false if the pattern is gated and the line is missing one of its literals.
+     */
+    boolean admits(int pattern, CharSequence line) {
+        if (!gated[pattern]) {
+            return true;
+        }
+        checks[pattern]++;
+        String[] gate = literals[pattern];
+        for (int i = 0; i < gate.length; i++) {
+            if (!contains(line, gate[i])) {
+                rejects[pattern]++;
+                if (i > 0) {
+                    String selective = gate[i];
+                    gate[i] = gate[i - 1];
+                    gate[i - 1] = selective;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the next run of the pattern should be timed.
+     */
+    boolean sample(int pattern) {
+        return literals[pattern] != null && (runs[pattern] & SAMPLE_MASK) == 0;
+    }
+
+    /**
+     * Records a run of the pattern, with its time in nanoseconds if it was sampled, otherwise -1.
+     */
+    void ran(int pattern, boolean hit, long nanos) {
+        runs[pattern]++;
+        if (hit) {
+            hits[pattern]++;
+        }
+        if (nanos >= 0) {
+            sampled[pattern]++;
+            sampledNanos[pattern] += nanos;
+        }
+    }
+
+    private void review() {
+        for (int pattern = 0; pattern < literals.length; pattern++) {
+            if (literals[pattern] == null) {
+                continue;
+            }
+            if (!gated[pattern]) {
+                gated[pattern] = runs[pattern] >= MIN_RUNS && hits[pattern] * HIT_RATE < runs[pattern]
+                        && sampled[pattern] > 0 && sampledNanos[pattern] / sampled[pattern] >= MIN_GATED_NANOS;
+            } else if (checks[pattern] >= MIN_RUNS && rejects[pattern] * REJECT_RATE < checks[pattern]) {
+                gated[pattern] = false;
+            }
+            runs[pattern] >>= 1;
+            hits[pattern] >>= 1;
+            sampled[pattern] >>= 1;
+            sampledNanos[pattern] >>= 1;
+            checks[pattern] >>= 1;
+            rejects[pattern] >>= 1;
+        }
+    }
+
+    static boolean contains(CharSequence line, String literal) {
+        if (line instanceof String) {
+            return ((String) line).contains(literal);
+        }
+        char first = literal.charAt(0);
+        int last = line.length() - literal.length();
+        search:
+        for (int i = 0; i <= last; i++) {
+            if (line.charAt(i) != first) {
+                continue;
+            }
+            for (int j = 1; j < literal.length(); j++) {
+                if (line.charAt(i + j) != literal.charAt(j)) {
+                    continue search;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+}
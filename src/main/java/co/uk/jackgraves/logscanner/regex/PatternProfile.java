@@ -0,0 +1,100 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in, runs of and hits for each pattern of a {@link DefinitionMatcher}, counted across all threads.
+ *
+ * LongAdder keeps a cell per contending thread, so workers recording at the same time do not fight over one
+ * counter. Patterns confirmed by the combined automaton are counted as hits without a run of their own, since
+ * the automaton's time is shared by all of them.
+ */
+public class PatternProfile {
+    private final String[] urls;
+    private final boolean[] combined;
+    private final LongAdder[] nanos;
+    private final LongAdder[] runs;
+    private final LongAdder[] hits;
+
+    PatternProfile(String[] urls, boolean[] combined) {
+        this.urls = urls;
+        this.combined = combined;
+        nanos = adders(urls.length);
+        runs = adders(urls.length);
+        hits = adders(urls.length);
+    }
+
+    void run(int pattern, long elapsed, boolean hit) {
+        nanos[pattern].add(elapsed);
+        runs[pattern].increment();
+        if (hit) {
+            hits[pattern].increment();
+        }
+    }
+
+    void confirmed(int pattern) {
+        hits[pattern].increment();
+    }
+
+    /**
+     * The patterns that took the most time, most expensive first.
+     */
+    public List<Entry> top(int count) {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = 0; i < urls.length; i++) {
+            entries.add(new Entry(urls[i], combined[i], nanos[i].sum(), runs[i].sum(), hits[i].sum()));
+        }
+        entries.sort(Comparator.comparingLong(Entry::getNanos).reversed());
+        return entries.subList(0, Math.min(count, entries.size()));
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public static class Entry {
+        private final String url;
+        private final boolean combined;
+        private final long nanos;
+        private final long runs;
+        private final long hits;
+
+        Entry(String url, boolean combined, long nanos, long runs, long hits) {
+            this.url = url;
+            this.combined = combined;
+            this.nanos = nanos;
+            this.runs = runs;
+            this.hits = hits;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * Whether the pattern is matched by the combined automaton, whose time is not split between patterns.
+         */
+        public boolean isCombined() {
+            return combined;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package co.uk.jackgraves.logscanner.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads the "object-stream" definition format with a streaming StAX parser, handing on every RegexEntry as soon as
+ * its end tag is read so that callers can start compiling it while the rest of the file is still being parsed.
+ *
+ * Elements other than the known RegexEntry fields are skipped. DTDs and external entities are not processed.
+ */
+public final class DefinitionReader {
+    private static final String ENTRY = "RegexEntry";
+    private static final Set<String> FIELDS = new HashSet<>(Arrays.asList("pageName", "regex", "URL", "Id", "sourceID"));
+
+    private DefinitionReader() {
+    }
+
+    public static ObjectStream read(InputStream in) throws XMLStreamException {
+        return read(in, item -> { });
+    }
+
+    public static ObjectStream read(InputStream in, Consumer<RegExItem> onEntry) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        XMLStreamReader reader = factory.createXMLStreamReader(in);
+        ObjectStream stream = new ObjectStream();
+        stream.regexItems = new ArrayList<>();
+        try {
+            RegExItem item = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (ENTRY.equals(name)) {
+                        item = new RegExItem();
+                    } else if (item != null && FIELDS.contains(name)) {
+                        set(item, name, reader.getElementText());
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && item != null && ENTRY.equals(reader.getLocalName())) {
+                    stream.regexItems.add(item);
+                    onEntry.accept(item);
+                    item = null;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return stream;
+    }
+
+    private static void set(RegExItem item, String name, String text) {
+        switch (name) {
+            case "pageName":
+                item.pageName = text;
+                break;
+            case "regex":
+                item.regex = text;
+                break;
+            case "URL":
+                item.URL = text;
+                break;
+            case "Id":
+                item.Id = text;
+                break;
+            case "sourceID":
+                item.sourceID = text;
+                break;
+        }
+    }
+}
@@ -1,11 +1,10 @@
 package co.uk.jackgraves.logscanner.xml;
 
-import javax.xml.bind.annotation.*;
 import java.util.List;
 
-@XmlAccessorType(XmlAccessType.FIELD)
-@XmlRootElement(name = "object-stream")
+/**
+ * The root "object-stream" element of a definition file.
+ */
 public class ObjectStream {
-    @XmlElement(name = "RegexEntry")
     public List<RegExItem> regexItems;
 }
@@ -1,10 +1,9 @@
 package co.uk.jackgraves.logscanner.xml;
 
-import javax.xml.bind.annotation.*;
-
+/**
+ * One "RegexEntry" of a definition file.
+ */
 @SuppressWarnings("unused")
-@XmlAccessorType(XmlAccessType.FIELD)
-@XmlRootElement(name = "RegexEntry")
 public class RegExItem {
     @SuppressWarnings("unused")
     public String pageName;
@@ -12,4 +11,4 @@ public class RegExItem {
     public String URL;
     public String Id;
     public String sourceID;
-}
\ No newline at end of file
+}
@@ -0,0 +1,182 @@
+package co.uk.jackgraves.logscanner;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+    private static final String LOG = "2018-05-01 10:00:00,000 ERROR disk full\n2018-05-01 10:00:01,000 INFO ok\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File log;
+    private File definitions;
+    private File saved;
+
+    @Before
+    public void setUp() throws IOException {
+        log = folder.newFile("atlassian-jira.log");
+        definitions = folder.newFile("defs.xml");
+        saved = new File(folder.getRoot(), "checkpoint");
+        write(log, LOG);
+        write(definitions, "<regexes/>");
+    }
+
+    @Test
+    public void savesAndLoadsResults() throws IOException {
+        ResultAggregator results = new ResultAggregator(true, "atlassian-jira.log");
+        results.add("https://example.com/disk", "2018-05-01 10:00:00,000 ERROR disk full", 1);
+        results.add("https://example.com/disk", "2018-05-01 10:00:09,000 ERROR disk full again", 7);
+        results.add("https://example.com/oom", "OutOfMemoryError \u00e9", 3);
+        results.timeout("https://example.com/slow", "2018-05-01 10:00:05,000 WARN very long line", 5);
+        results.countLines(12);
+        Checkpoint.capture(log.getPath(), LOG.length(), definitionList(), true, results).save(saved);
+
+        Checkpoint loaded = Checkpoint.load(saved);
+        assertNotNull(loaded);
+        assertEquals(LOG.length(), loaded.getOffset());
+        ResultAggregator restored = loaded.getResults();
+        assertTrue(restored.isVerbose());
+        assertEquals(12, restored.getLineCount());
+        List<ResultSummary> summaries = new ArrayList<>(restored.getSummaries());
+        assertEquals(2, summaries.size());
+        ResultSummary disk = summaries.get(0);
+        assertEquals("https://example.com/disk", disk.getUrl());
+        assertEquals(2, disk.getCount());
+        assertEquals("atlassian-jira.log", disk.getFirstSource());
+        assertEquals(1, disk.getFirstLineNumber());
+        assertEquals("2018-05-01 10:00:09,000 ERROR disk full again", disk.getLastLine());
+        assertEquals(7, disk.getLastLineNumber());
+        assertEquals("OutOfMemoryError \u00e9", summaries.get(1).getFirstLine());
+        assertEquals(3, restored.getOccurrences().size());
+        for (int i = 0; i < 3; i++) {
+            Result expected = results.getOccurrences().get(i);
+            Result actual = restored.getOccurrences().get(i);
+            assertEquals(expected.getUrl(), actual.getUrl());
+            assertEquals(expected.getSource(), actual.getSource());
+            assertEquals(expected.getLogLine(), actual.getLogLine());
+            assertEquals(expected.getLineNumber(), actual.getLineNumber());
+        }
+        assertEquals(LogTimestamp.parse("2018-05-01 10:00:09,000"), restored.getOccurrences().get(1).getTimestamp());
+        assertEquals(1, restored.getTimeouts().size());
+        Result timeout = restored.getTimeouts().get(0);
+        assertEquals("https://example.com/slow", timeout.getUrl());
+        assertEquals("atlassian-jira.log", timeout.getSource());
+        assertEquals("2018-05-01 10:00:05,000 WARN very long line", timeout.getLogLine());
+        assertEquals(LogTimestamp.parse("2018-05-01 10:00:05,000"), timeout.getTimestamp());
+        assertEquals(5, timeout.getLineNumber());
+        assertArrayEquals(new String[0], folder.getRoot().list((directory, name) -> name.endsWith(".tmp")));
+    }
+
+    @Test
+    public void ignoresOtherVersionsAndDamagedFiles() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(saved))) {
+            out.writeInt(2);
+            out.writeLong(0);
+        }
+        assertNull(Checkpoint.load(saved));
+
+        Checkpoint.capture(log.getPath(), LOG.length(), definitionList(), false, new ResultAggregator(false)).save(saved);
+        byte[] bytes = Files.readAllBytes(saved.toPath());
+        Files.write(saved.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+        assertNull(Checkpoint.load(saved));
+
+        assertNull(Checkpoint.load(new File(folder.getRoot(), "missing")));
+    }
+
+    @Test
+    public void resumesAfterAppend() throws IOException {
+        Checkpoint checkpoint = capture();
+        assertNull(checkpoint.checkResume(log.getPath(), definitionList(), false, false));
+        Files.write(log.toPath(), "2018-05-01 10:00:02,000 INFO more\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertNull(Checkpoint.load(saved).checkResume(log.getPath(), definitionList(), false, false));
+    }
+
+    @Test
+    public void truncatedLogInvalidates() throws IOException {
+        Checkpoint checkpoint = capture();
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(10);
+        }
+        assertEquals("log file has been truncated", checkpoint.checkResume(log.getPath(), definitionList(), false, false));
+    }
+
+    @Test
+    public void rewrittenTailInvalidates() throws IOException {
+        Checkpoint checkpoint = capture();
+        // Same inode and at least as long, but the bytes before the offset differ
+        write(log, LOG.replace("disk full", "disk FULL") + "2018-05-01 10:00:02,000 INFO more\n");
+        assertEquals("log file has been truncated", checkpoint.checkResume(log.getPath(), definitionList(), false, false));
+    }
+
+    @Test
+    public void onlyTheLastBytesAreChecked() throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (head.length() < 8192) {
+            head.append("2018-05-01 09:00:00,000 INFO filler\n");
+        }
+        write(log, head + LOG);
+        long offset = head.length() + LOG.length();
+        Checkpoint checkpoint = Checkpoint.capture(log.getPath(), offset, definitionList(), false, new ResultAggregator(false));
+        write(log, head.toString().replaceFirst("filler", "FILLER") + LOG);
+        assertNull(checkpoint.checkResume(log.getPath(), definitionList(), false, false));
+    }
+
+    @Test
+    public void changedDefinitionsOrOptionsInvalidate() throws IOException {
+        Checkpoint checkpoint = capture();
+        assertEquals("scan options have changed", checkpoint.checkResume(log.getPath(), definitionList(), true, false));
+        assertEquals("scan options have changed", checkpoint.checkResume(log.getPath(), definitionList(), false, true));
+        write(definitions, "<regexes><regex/></regexes>");
+        assertEquals("definitions have changed", checkpoint.checkResume(log.getPath(), definitionList(), false, false));
+    }
+
+    @Test
+    public void replacedLogInvalidates() throws IOException {
+        Checkpoint checkpoint = capture();
+        File replacement = folder.newFile("rotated.log");
+        write(replacement, LOG);
+        Files.move(replacement.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertEquals("log file has been rotated or replaced", checkpoint.checkResume(log.getPath(), definitionList(), false, false));
+    }
+
+    @Test
+    public void endOfLastLineLeavesPartialLine() throws IOException {
+        assertEquals(LOG.length(), Checkpoint.endOfLastLine(log.getPath()));
+        Files.write(log.toPath(), "2018-05-01 10:00:02,000 IN".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertEquals(LOG.length(), Checkpoint.endOfLastLine(log.getPath()));
+        write(log, "no newline at all");
+        assertEquals(0, Checkpoint.endOfLastLine(log.getPath()));
+    }
+
+    private Checkpoint capture() throws IOException {
+        Checkpoint.capture(log.getPath(), LOG.length(), definitionList(), false, new ResultAggregator(false)).save(saved);
+        return Checkpoint.load(saved);
+    }
+
+    private List<File> definitionList() {
+        return Collections.singletonList(definitions);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
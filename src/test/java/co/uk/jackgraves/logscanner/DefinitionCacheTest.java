@@ -0,0 +1,94 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.xml.DefinitionReader;
+import co.uk.jackgraves.logscanner.xml.RegExItem;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DefinitionCacheTest {
+    private static final String XML = "<object-stream>\n"
+            + "    <RegexEntry><pageName>PKIX</pageName><regex>PKIX path building failed</regex>"
+            + "<URL>https://example.com/pkix</URL><Id>1</Id><sourceID>jira</sourceID></RegexEntry>\n"
+            + "    <RegexEntry><regex>caf\u00e9 (\\d+)</regex><URL>https://example.com/cafe</URL></RegexEntry>\n"
+            + "</object-stream>\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void cacheGivesBackWhatTheXmlHeld() throws Exception {
+        File xml = write("defs.xml", XML);
+        File cache = new File(xml.getPath() + ".compiled");
+        List<RegExItem> parsed;
+        try (InputStream in = new FileInputStream(xml)) {
+            parsed = DefinitionReader.read(in).regexItems;
+        }
+        long checksum = DataFiles.checksum(xml);
+        DefinitionCache.save(cache, checksum, parsed);
+
+        List<RegExItem> loaded = DefinitionCache.load(cache, checksum);
+        assertNotNull(loaded);
+        assertEquals(parsed.size(), loaded.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(fields(parsed.get(i)), fields(loaded.get(i)));
+        }
+        assertNull(loaded.get(1).pageName);
+        assertEquals("caf\u00e9 (\\d+)", loaded.get(1).regex);
+        assertEquals(Arrays.asList(xml.getName(), cache.getName()), names());
+    }
+
+    @Test
+    public void changedXmlMakesTheCacheStale() throws Exception {
+        File xml = write("defs.xml", XML);
+        File cache = new File(xml.getPath() + ".compiled");
+        try (InputStream in = new FileInputStream(xml)) {
+            DefinitionCache.save(cache, DataFiles.checksum(xml), DefinitionReader.read(in).regexItems);
+        }
+        write("defs.xml", XML.replace("failed", "FAILED"));
+        assertNull(DefinitionCache.load(cache, DataFiles.checksum(xml)));
+    }
+
+    @Test
+    public void missingOrDamagedCacheIsIgnored() throws IOException {
+        File cache = new File(folder.getRoot(), "defs.xml.compiled");
+        assertNull(DefinitionCache.load(cache, 42));
+        RegExItem item = new RegExItem();
+        item.regex = "x";
+        item.URL = "https://example.com/x";
+        DefinitionCache.save(cache, 42, Arrays.asList(item, item));
+        byte[] bytes = Files.readAllBytes(cache.toPath());
+        Files.write(cache.toPath(), Arrays.copyOf(bytes, bytes.length - 4));
+        assertNull(DefinitionCache.load(cache, 42));
+        bytes[3] = 99;
+        Files.write(cache.toPath(), bytes);
+        assertNull(DefinitionCache.load(cache, 42));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private List<String> names() {
+        String[] names = folder.getRoot().list();
+        Arrays.sort(names);
+        return Arrays.asList(names);
+    }
+
+    private static List<String> fields(RegExItem item) {
+        return Arrays.asList(item.pageName, item.regex, item.URL, item.Id, item.sourceID);
+    }
+}
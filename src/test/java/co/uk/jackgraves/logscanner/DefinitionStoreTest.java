@@ -0,0 +1,297 @@
+package co.uk.jackgraves.logscanner;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DefinitionStoreTest {
+    private static final long TTL = TimeUnit.HOURS.toMillis(1);
+    private static final String GOOD = "<regexes><regex/></regexes>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private DefinitionStore store;
+    private final List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        store = new DefinitionStore(new File(folder.getRoot(), "definitions"), TTL, false);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void downloadStoresBodyAndETag() throws IOException {
+        serve("/jira.xml", exchange -> send(exchange, 200, GOOD, "\"v1\""));
+        File file = store.file("jira.xml");
+        assertEquals(DefinitionStore.Status.DOWNLOADED, refresh(file, "/jira.xml"));
+        assertEquals(GOOD, read(file));
+        assertEquals("\"v1\"", meta(file).getProperty("ETag"));
+        assertEquals(Collections.emptyList(), leftovers(file));
+    }
+
+    @Test
+    public void notModifiedKeepsCopyAndRestartsTtl() throws IOException {
+        serve("/jira.xml", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                send(exchange, 304, null, "\"v1\"");
+            } else {
+                send(exchange, 200, GOOD, "\"v1\"");
+            }
+        });
+        File file = store.file("jira.xml");
+        assertEquals(DefinitionStore.Status.DOWNLOADED, refresh(file, "/jira.xml"));
+
+        long expired = System.currentTimeMillis() - 2 * TTL;
+        assertTrue(file.setLastModified(expired));
+        assertEquals(DefinitionStore.Status.UNCHANGED, refresh(file, "/jira.xml"));
+        assertEquals("\"v1\"", ifNoneMatch.get(ifNoneMatch.size() - 1));
+        assertEquals(GOOD, read(file));
+        assertTrue(System.currentTimeMillis() - file.lastModified() < TTL);
+
+        // Within the TTL again, so not even revalidated
+        int before = requests.get();
+        assertEquals(DefinitionStore.Status.CACHED, refresh(file, "/jira.xml"));
+        assertEquals(before, requests.get());
+    }
+
+    @Test
+    public void failedFetchFallsBackToStaleCopy() throws IOException {
+        AtomicInteger status = new AtomicInteger(200);
+        serve("/jira.xml", exchange -> send(exchange, status.get(), status.get() == 200 ? GOOD : "down", null));
+        File file = store.file("jira.xml");
+        assertEquals(DefinitionStore.Status.DOWNLOADED, refresh(file, "/jira.xml"));
+
+        status.set(500);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * TTL));
+        assertEquals(DefinitionStore.Status.STALE, refresh(file, "/jira.xml"));
+        assertEquals(GOOD, read(file));
+
+        URL unreachable = url("/jira.xml");
+        server.stop(0);
+        assertEquals(DefinitionStore.Status.STALE, store.refresh(Collections.singletonMap(file, unreachable)).get(file));
+        assertEquals(GOOD, read(file));
+        File missing = store.file("missing.xml");
+        assertEquals(DefinitionStore.Status.MISSING, store.refresh(Collections.singletonMap(missing, unreachable)).get(missing));
+        assertFalse(missing.exists());
+    }
+
+    @Test
+    public void partialDownloadNeverReplacesGoodFile() throws IOException {
+        AtomicInteger calls = new AtomicInteger();
+        serve("/jira.xml", exchange -> {
+            if (calls.getAndIncrement() == 0) {
+                send(exchange, 200, GOOD, "\"v1\"");
+                return;
+            }
+            // Promise more than is sent, then drop the connection
+            byte[] part = "<regexes><re".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("ETag", "\"v2\"");
+            exchange.sendResponseHeaders(200, 4096);
+            OutputStream out = exchange.getResponseBody();
+            out.write(part);
+            out.flush();
+            exchange.close();
+        });
+        File file = store.file("jira.xml");
+        assertEquals(DefinitionStore.Status.DOWNLOADED, refresh(file, "/jira.xml"));
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 2 * TTL));
+
+        assertEquals(DefinitionStore.Status.STALE, refresh(file, "/jira.xml"));
+        assertEquals(GOOD, read(file));
+        assertEquals("\"v1\"", meta(file).getProperty("ETag"));
+        assertEquals(Collections.emptyList(), leftovers(file));
+    }
+
+    @Test
+    public void fetchesDefinitionsConcurrently() throws IOException {
+        int count = 6;
+        CountDownLatch arrived = new CountDownLatch(count);
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Map<File, URL> sources = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            String path = "/definitions-" + i + ".xml";
+            String body = "<regexes id=\"" + i + "\"/>";
+            serve(path, exchange -> {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                arrived.countDown();
+                try {
+                    // Only returns once every fetch is in flight, which a serial refresh never reaches
+                    arrived.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                active.decrementAndGet();
+                send(exchange, 200, body, null);
+            });
+            sources.put(store.file("definitions-" + i + ".xml"), url(path));
+        }
+        long started = System.nanoTime();
+        Map<File, DefinitionStore.Status> statuses = store.refresh(sources);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertEquals(count, peak.get());
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 10000);
+        int i = 0;
+        for (Map.Entry<File, DefinitionStore.Status> status : statuses.entrySet()) {
+            assertEquals(DefinitionStore.Status.DOWNLOADED, status.getValue());
+            assertEquals("<regexes id=\"" + i++ + "\"/>", read(status.getKey()));
+        }
+    }
+
+    @Test
+    public void simultaneousRefreshesOfOneFileDoNotCollide() throws Exception {
+        CountDownLatch arrived = new CountDownLatch(2);
+        StringBuilder large = new StringBuilder("<regexes>");
+        while (large.length() < 1 << 20) {
+            large.append("<regex>PKIX path building failed</regex>");
+        }
+        String body = large.append("</regexes>").toString();
+        serve("/jira.xml", exchange -> {
+            arrived.countDown();
+            try {
+                arrived.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, 200, body, "\"v1\"");
+        });
+        // Two runs sharing one directory
+        DefinitionStore other = new DefinitionStore(new File(folder.getRoot(), "definitions"), TTL, false);
+        File file = store.file("jira.xml");
+        ExecutorService runs = Executors.newFixedThreadPool(2);
+        try {
+            Future<DefinitionStore.Status> first = runs.submit(() -> refresh(file, "/jira.xml"));
+            Future<DefinitionStore.Status> second = runs.submit(() -> other.refresh(Collections.singletonMap(file, url("/jira.xml"))).get(file));
+            assertEquals(DefinitionStore.Status.DOWNLOADED, first.get(20, TimeUnit.SECONDS));
+            assertEquals(DefinitionStore.Status.DOWNLOADED, second.get(20, TimeUnit.SECONDS));
+        } finally {
+            runs.shutdownNow();
+        }
+        assertEquals(body, read(file));
+        assertEquals(Collections.emptyList(), leftovers(file));
+    }
+
+    @Test
+    public void temporaryFileOfAnOlderRunIsNoObstacle() throws IOException {
+        serve("/jira.xml", exchange -> send(exchange, 200, GOOD, null));
+        File file = store.file("jira.xml");
+        File fixedName = new File(file.getPath() + ".tmp");
+        assertTrue(fixedName.mkdirs());
+        assertTrue(new File(fixedName, "in-use").createNewFile());
+        assertEquals(DefinitionStore.Status.DOWNLOADED, refresh(file, "/jira.xml"));
+        assertEquals(GOOD, read(file));
+    }
+
+    @Test
+    public void offlineNeverFetches() throws IOException {
+        serve("/jira.xml", exchange -> send(exchange, 200, GOOD, null));
+        DefinitionStore offline = new DefinitionStore(new File(folder.getRoot(), "definitions"), TTL, true);
+        File file = offline.file("jira.xml");
+        assertEquals(DefinitionStore.Status.MISSING, offline.refresh(Collections.singletonMap(file, url("/jira.xml"))).get(file));
+        assertEquals(0, requests.get());
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    private void serve(String path, Handler handler) {
+        server.createContext(path, exchange -> {
+            requests.incrementAndGet();
+            String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (etag != null) {
+                ifNoneMatch.add(etag);
+            }
+            try {
+                handler.handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private static void send(HttpExchange exchange, int status, String body, String etag) throws IOException {
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private DefinitionStore.Status refresh(File file, String path) throws IOException {
+        return store.refresh(Collections.singletonMap(file, url(path))).get(file);
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), server.getAddress().getPort(), path);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Temporary files left beside the given one.
+     */
+    private static List<String> leftovers(File file) {
+        String[] names = file.getParentFile().list((directory, name) -> name.endsWith(".tmp"));
+        return names == null ? Collections.emptyList() : Arrays.asList(names);
+    }
+
+    private static Properties meta(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file.getPath() + ".meta")) {
+            properties.load(in);
+        }
+        return properties;
+    }
+}
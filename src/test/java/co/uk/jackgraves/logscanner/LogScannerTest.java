@@ -0,0 +1,305 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.io.MappedLogReader;
+import co.uk.jackgraves.logscanner.regex.DefinitionMatcher;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+public class LogScannerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parallelScanMergesInLineOrder() {
+        List<String> lines = log(20000);
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions());
+        ResultAggregator sequential = new ResultAggregator(true);
+        LogScanner.parseLog(lines, i -> i + 1, matcher, sequential);
+        ResultAggregator parallel = new ResultAggregator(true);
+        LogScanner.parseLogStream(lines, i -> i + 1, matcher, parallel);
+        assertFalse(sequential.getOccurrences().isEmpty());
+        assertSameResults(sequential, parallel);
+    }
+
+    @Test
+    public void parallelBatchesKeepTheirOrder() {
+        List<String> lines = log(9000);
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions());
+        ResultAggregator sequential = new ResultAggregator(true);
+        LogScanner.parseLog(lines, i -> i + 1, matcher, sequential);
+        ResultAggregator parallel = new ResultAggregator(true);
+        for (int from = 0; from < lines.size(); from += 4096) {
+            int first = from;
+            LogScanner.parseLogStream(lines.subList(from, Math.min(from + 4096, lines.size())), i -> first + i + 1, matcher, parallel);
+        }
+        assertSameResults(sequential, parallel);
+    }
+
+    @Test
+    public void gridFindsWhatLineByLineFinds() {
+        List<String> lines = log(500);
+        for (int i = 3; i < lines.size(); i += 7) {
+            lines.set(i, lines.get(i) + " code " + (i % 40) + " CODE " + (i % 13));
+        }
+        for (DefinitionMatcher.Engine engine : DefinitionMatcher.Engine.values()) {
+            DefinitionMatcher matcher = new DefinitionMatcher(manyDefinitions(), engine, false, 0);
+            ResultAggregator sequential = new ResultAggregator(true);
+            LogScanner.parseLog(lines, i -> i + 1, matcher, sequential);
+            assertFalse(sequential.getOccurrences().isEmpty());
+            for (int[] grid : new int[][]{{1, 1}, {1, 4}, {3, 4}, {7, 2}}) {
+                ResultAggregator parallel = new ResultAggregator(true);
+                LogScanner.parseLogGrid(lines, i -> i + 1, matcher, parallel, grid[0], grid[1]);
+                assertSameResults(sequential, parallel);
+            }
+        }
+    }
+
+    @Test
+    public void shortBatchWithManyDefinitionsUsesTheGrid() {
+        // With the 4 workers the tests run with, fewer than 1024 lines are split by pattern as well
+        assertEquals(4, ForkJoinPool.getCommonPoolParallelism());
+        List<String> lines = log(300);
+        for (int i = 0; i < lines.size(); i += 3) {
+            lines.set(i, lines.get(i) + " code " + (i % 40));
+        }
+        DefinitionMatcher matcher = new DefinitionMatcher(manyDefinitions());
+        ResultAggregator sequential = new ResultAggregator(true);
+        LogScanner.parseLog(lines, i -> i + 1, matcher, sequential);
+        ResultAggregator parallel = new ResultAggregator(true);
+        LogScanner.parseLogStream(lines, i -> i + 1, matcher, parallel);
+        assertSameResults(sequential, parallel);
+    }
+
+    /**
+     * Enough case-insensitive definitions, which have no literals to prefilter on, to give every line many candidates.
+     */
+    private static Map<String, Pattern> manyDefinitions() {
+        Map<String, Pattern> definitions = definitions();
+        for (int i = 0; i < 40; i++) {
+            definitions.put("https://example.com/code-" + i, Pattern.compile("(?i)code " + i + "\\b"));
+        }
+        return definitions;
+    }
+
+    @Test
+    public void multipleFilesMergeInTheOrderGiven() throws IOException {
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions());
+        // Large enough to be cut into several chunks
+        List<String> plain = log(40000);
+        File plainFile = write("atlassian-jira.log.1", plain);
+        List<String> gzipped = log(700);
+        File gzipFile = folder.newFile("atlassian-jira.log.2.gz");
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipFile))) {
+            out.write(text(gzipped));
+        }
+        List<String> older = log(300);
+        List<String> newer = log(500);
+        File zipFile = folder.newFile("support.zip");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            // Written newest first: entries are scanned oldest first
+            entry(out, "logs/atlassian-jira.log", 2_000_000_000L, newer);
+            entry(out, "logs/", 0, new ArrayList<>());
+            entry(out, "logs/atlassian-jira.log.1", 1_000_000_000L, older);
+        }
+
+        ResultAggregator expected = new ResultAggregator(true);
+        expected.merge(sequential(plain, plainFile.getPath(), matcher));
+        expected.merge(sequential(gzipped, gzipFile.getPath(), matcher));
+        expected.merge(sequential(older, zipFile.getPath() + "!/logs/atlassian-jira.log.1", matcher));
+        expected.merge(sequential(newer, zipFile.getPath() + "!/logs/atlassian-jira.log", matcher));
+        ResultAggregator actual = LogScanner.scanLogFiles(Arrays.asList(plainFile, gzipFile, zipFile), matcher, true, false);
+        assertSameResults(expected, actual);
+        assertEquals(plainFile.getPath(), actual.getSummaries().iterator().next().getFirstSource());
+    }
+
+    @Test
+    public void unreadableFileLeavesTheOthers() throws IOException {
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions());
+        List<String> lines = log(1000);
+        File good = write("good.log", lines);
+        File damaged = folder.newFile("damaged.zip");
+        Files.write(damaged.toPath(), new byte[]{'P', 'K', 3, 4, 1, 2, 3});
+        ResultAggregator expected = new ResultAggregator(true);
+        expected.merge(sequential(lines, good.getPath(), matcher));
+        assertSameResults(expected, LogScanner.scanLogFiles(Arrays.asList(damaged, good), matcher, true, false));
+    }
+
+    @Test
+    public void byteFilterFindsWhatDecodedLinesFind() throws IOException {
+        Map<String, Pattern> definitions = definitions();
+        definitions.put("https://example.com/overflow", Pattern.compile("\u00dcberlauf im (\\w+)"));
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions);
+        byte[] unrelated = "2018-05-01 10:00:00,000 INFO nothing to see".getBytes(StandardCharsets.UTF_8);
+        assertFalse("the byte filter is in use", matcher.mayMatch(unrelated, 0, unrelated.length));
+
+        List<String> lines = log(20000);
+        for (int i = 5; i < lines.size(); i += 41) {
+            lines.set(i, lines.get(i).substring(0, 24) + "ERROR Fehler: \u00dcberlauf im Puffer \u00e9\u00e8 " + i);
+        }
+        for (int i = 7; i < lines.size(); i += 43) {
+            lines.set(i, lines.get(i) + " caf\u00e9 \ud83d\ude00\r");
+        }
+        File file = write("atlassian-jira.log", lines);
+        ResultAggregator actual = new ResultAggregator(true, file.getPath());
+        try (MappedLogReader reader = new MappedLogReader(file.getPath())) {
+            for (MappedLogReader.Chunk chunk : reader.split(1)) {
+                actual.merge(LogScanner.scanLines(chunk, file.getPath(), matcher, true, false), actual.getLineCount());
+            }
+        }
+        for (int i = 7; i < lines.size(); i += 43) {
+            // Stripped with the "\r\n" terminator
+            lines.set(i, lines.get(i).substring(0, lines.get(i).length() - 1));
+        }
+        ResultAggregator expected = sequential(lines, file.getPath(), matcher);
+        assertTrue(expected.getSummaries().stream().anyMatch(summary -> summary.getUrl().endsWith("/overflow")));
+        assertSameResults(expected, actual);
+    }
+
+    @Test
+    public void laterFilesDoNotOverrideEarlierDefinitions() throws IOException {
+        File first = folder.newFile("jira-core.xml");
+        Files.write(first.toPath(), definitionXml(
+                "https://example.com/oom", "OutOfMemoryError",
+                "https://example.com/pkix", "PKIX path building failed",
+                "https://example.com/oom", "OutOfMemoryError: Java heap space").getBytes(StandardCharsets.UTF_8));
+        File second = folder.newFile("jira-software.xml");
+        Files.write(second.toPath(), definitionXml(
+                "https://example.com/oom", "Metaspace",
+                "https://example.com/pkix-again", "PKIX path building failed",
+                "https://example.com/pool", "pool \\d+ exhausted",
+                "https://example.com/pool", "pool (\\d+) exhausted",
+                "https://example.com/pool-alias", "pool (\\d+) exhausted").getBytes(StandardCharsets.UTF_8));
+
+        for (boolean cached : new boolean[]{false, true}) {
+            LogScanner.Definitions loaded = LogScanner.loadDefinitions(Arrays.asList(first, second));
+            assertNotNull(loaded);
+            assertEquals(cached, loaded.cached);
+            assertEquals(8, loaded.count);
+            assertEquals(2, loaded.duplicates);
+            assertEquals(Arrays.asList("https://example.com/oom", "https://example.com/pkix", "https://example.com/pool",
+                    "https://example.com/pool-alias"), new ArrayList<>(loaded.patterns.keySet()));
+            Map<String, Pattern> compiled = loaded.compiled();
+            // The first file keeps its own URLs and expressions; within a file the last entry for a URL wins
+            assertEquals("OutOfMemoryError: Java heap space", compiled.get("https://example.com/oom").pattern());
+            assertEquals("pool (\\d+) exhausted", compiled.get("https://example.com/pool").pattern());
+            assertEquals("pool (\\d+) exhausted", compiled.get("https://example.com/pool-alias").pattern());
+        }
+    }
+
+    @Test
+    public void unreadableDefinitionFileLoadsNothing() throws IOException {
+        File good = folder.newFile("good.xml");
+        Files.write(good.toPath(), definitionXml("https://example.com/oom", "OutOfMemoryError").getBytes(StandardCharsets.UTF_8));
+        File broken = folder.newFile("broken.xml");
+        Files.write(broken.toPath(), "<object-stream><RegexEntry>".getBytes(StandardCharsets.UTF_8));
+        assertNull(LogScanner.loadDefinitions(Arrays.asList(good, broken)));
+    }
+
+    private static String definitionXml(String... urlsAndRegexes) {
+        StringBuilder xml = new StringBuilder("<object-stream>\n");
+        for (int i = 0; i < urlsAndRegexes.length; i += 2) {
+            xml.append("    <RegexEntry><regex>").append(urlsAndRegexes[i + 1]).append("</regex><URL>")
+                    .append(urlsAndRegexes[i]).append("</URL></RegexEntry>\n");
+        }
+        return xml.append("</object-stream>\n").toString();
+    }
+
+    private static ResultAggregator sequential(List<String> lines, String source, DefinitionMatcher matcher) {
+        ResultAggregator results = new ResultAggregator(true, source);
+        LogScanner.parseLog(lines, i -> i + 1, matcher, results);
+        results.countLines(lines.size());
+        return results;
+    }
+
+    private File write(String name, List<String> lines) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), text(lines));
+        return file;
+    }
+
+    private static void entry(ZipOutputStream out, String name, long time, List<String> lines) throws IOException {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(time);
+        out.putNextEntry(entry);
+        out.write(text(lines));
+        out.closeEntry();
+    }
+
+    private static byte[] text(List<String> lines) {
+        return (String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static Map<String, Pattern> definitions() {
+        Map<String, Pattern> definitions = new LinkedHashMap<>();
+        definitions.put("https://example.com/oom", Pattern.compile("OutOfMemoryError"));
+        definitions.put("https://example.com/pkix", Pattern.compile("PKIX path building failed"));
+        definitions.put("https://example.com/pool", Pattern.compile("pool (\\d+) exhausted"));
+        definitions.put("https://example.com/slow", Pattern.compile("took \\d{4,} ms"));
+        return definitions;
+    }
+
+    static List<String> log(int count) {
+        List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String time = String.format("2018-05-01 %02d:%02d:%02d,000 ", i / 3600 % 24, i / 60 % 60, i % 60);
+            if (i % 97 == 0) {
+                lines.add(time + "ERROR java.lang.OutOfMemoryError: Java heap space");
+            } else if (i % 89 == 0) {
+                lines.add(time + "ERROR sun.security.validator.ValidatorException: PKIX path building failed");
+            } else if (i % 53 == 0) {
+                lines.add(time + "WARN connection pool " + i + " exhausted");
+            } else if (i % 31 == 0) {
+                lines.add(time + "INFO request took " + (i * 7) + " ms");
+            } else {
+                lines.add(time + "INFO nothing to see on line " + i);
+            }
+        }
+        return lines;
+    }
+
+    static void assertSameResults(ResultAggregator expected, ResultAggregator actual) {
+        assertEquals(expected.getLineCount(), actual.getLineCount());
+        List<ResultSummary> expectedSummaries = new ArrayList<>(expected.getSummaries());
+        List<ResultSummary> actualSummaries = new ArrayList<>(actual.getSummaries());
+        assertEquals(expectedSummaries.size(), actualSummaries.size());
+        for (int i = 0; i < expectedSummaries.size(); i++) {
+            assertEquals(describe(expectedSummaries.get(i)), describe(actualSummaries.get(i)));
+        }
+        assertEquals(describe(expected.getOccurrences()), describe(actual.getOccurrences()));
+        assertEquals(describe(expected.getTimeouts()), describe(actual.getTimeouts()));
+    }
+
+    private static String describe(ResultSummary summary) {
+        return summary.getUrl() + " x" + summary.getCount()
+                + " first " + summary.getFirstSource() + ":" + summary.getFirstLineNumber() + " " + summary.getFirstLine()
+                + " last " + summary.getLastSource() + ":" + summary.getLastLineNumber() + " " + summary.getLastLine();
+    }
+
+    private static List<String> describe(List<Result> results) {
+        List<String> described = new ArrayList<>();
+        for (Result result : results) {
+            described.add(result.getUrl() + " " + result.getSource() + ":" + result.getLineNumber() + " " + result.getLogLine());
+        }
+        return described;
+    }
+}
@@ -0,0 +1,99 @@
+package co.uk.jackgraves.logscanner;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.*;
+
+public class LogTimestampTest {
+
+    @Test
+    public void parsesAtlassianFormat() {
+        assertEquals(millis("2018-05-01T14:30:15.123"), LogTimestamp.parseAt("2018-05-01 14:30:15,123 http-nio-8080-exec-1 ERROR", 0));
+        assertEquals(millis("2018-05-01T14:30:15.123"), LogTimestamp.parseAt("2018-05-01 14:30:15.123 INFO", 0));
+    }
+
+    @Test
+    public void millisecondsAreOptional() {
+        assertEquals(millis("2018-05-01T14:30:15"), LogTimestamp.parseAt("2018-05-01 14:30:15", 0));
+        assertEquals(millis("2018-05-01T14:30:15"), LogTimestamp.parseAt("2018-05-01 14:30:15 INFO", 0));
+        assertEquals(millis("2018-05-01T14:30:15"), LogTimestamp.parseAt("2018-05-01 14:30:15,xyz", 0));
+    }
+
+    @Test
+    public void matchesJavaTimeAcrossCalendar() {
+        LocalDateTime end = LocalDateTime.of(2101, 1, 1, 0, 0);
+        for (LocalDateTime time = LocalDateTime.of(1899, 12, 31, 23, 59, 58); time.isBefore(end); time = time.plusHours(77).plusSeconds(13)) {
+            String text = String.format("%04d-%02d-%02d %02d:%02d:%02d,042", time.getYear(), time.getMonthValue(),
+                    time.getDayOfMonth(), time.getHour(), time.getMinute(), time.getSecond());
+            assertEquals(text, time.toInstant(ZoneOffset.UTC).toEpochMilli() + 42, LogTimestamp.parseAt(text, 0));
+        }
+        assertEquals(millis("2020-02-29T00:00:00"), LogTimestamp.parseAt("2020-02-29 00:00:00", 0));
+        assertEquals(-1000, LogTimestamp.parseAt("1969-12-31 23:59:59", 0));
+        assertEquals(0, LogTimestamp.parseAt("1970-01-01 00:00:00,000", 0));
+    }
+
+    @Test
+    public void rejectsOutOfRangeFields() {
+        for (String text : new String[]{"2018-00-01 10:00:00", "2018-13-01 10:00:00", "2018-05-00 10:00:00",
+                "2018-05-32 10:00:00", "2018-05-01 24:00:00", "2018-05-01 10:60:00", "2018-05-01 10:00:60"}) {
+            assertEquals(text, LogTimestamp.NONE, LogTimestamp.parseAt(text, 0));
+        }
+    }
+
+    @Test
+    public void rejectsDaysPastTheEndOfTheMonth() {
+        for (String text : new String[]{"2018-02-31 10:00:00", "2018-02-29 10:00:00", "2019-02-29 10:00:00",
+                "1900-02-29 10:00:00", "2018-04-31 10:00:00", "2018-06-31 10:00:00", "2018-09-31 10:00:00", "2018-11-31 10:00:00"}) {
+            assertEquals(text, LogTimestamp.NONE, LogTimestamp.parseAt(text, 0));
+        }
+        assertEquals(millis("2020-02-29T10:00:00"), LogTimestamp.parseAt("2020-02-29 10:00:00", 0));
+        assertEquals(millis("2000-02-29T10:00:00"), LogTimestamp.parseAt("2000-02-29 10:00:00", 0));
+        assertEquals(millis("2018-12-31T10:00:00"), LogTimestamp.parseAt("2018-12-31 10:00:00", 0));
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        for (String text : new String[]{"", "2018-05-01", "2018-05-01 10:00", "2018/05/01 10:00:00", "2018-05-01T10:00:00",
+                "2018-05-01 10.00.00", "20x8-05-01 10:00:00", "2018-05-01 1a:00:00", "    at com.example.Foo(Foo.java:12)"}) {
+            assertEquals(text, LogTimestamp.NONE, LogTimestamp.parseAt(text, 0));
+        }
+    }
+
+    @Test
+    public void parseFindsFirstTimestampInLine() {
+        assertEquals(millis("2018-05-01T14:30:15.123"), LogTimestamp.parse("[main] 2018-05-01 14:30:15,123 started"));
+        assertEquals(millis("2018-05-01T14:30:15"), LogTimestamp.parse("x 2018-13-01 10:00:00 then 2018-05-01 14:30:15"));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parse("no timestamp here"));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parse(null));
+        assertEquals(millis("2018-05-01T14:30:15"), LogTimestamp.parseAt("at 2018-05-01 14:30:15", 3));
+    }
+
+    @Test
+    public void parsesArguments() {
+        assertEquals(millis("2018-05-01T00:00:00"), LogTimestamp.parseArgument("2018-05-01", false));
+        assertEquals(millis("2018-05-02T00:00:00"), LogTimestamp.parseArgument("2018-05-01", true));
+        assertEquals(millis("2018-05-01T14:30:00"), LogTimestamp.parseArgument("2018-05-01 14:30", false));
+        assertEquals(millis("2018-05-01T14:31:00"), LogTimestamp.parseArgument("2018-05-01T14:30", true));
+        assertEquals(millis("2018-05-01T14:30:15"), LogTimestamp.parseArgument(" 2018-05-01 14:30:15 ", false));
+        assertEquals(millis("2018-05-01T14:30:16"), LogTimestamp.parseArgument("2018-05-01 14:30:15", true));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parseArgument("2018-05", false));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parseArgument("2018-05-32", true));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parseArgument("2018-02-31", false));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parseArgument("2019-02-29 10:00", true));
+        assertEquals(millis("2020-03-01T00:00:00"), LogTimestamp.parseArgument("2020-02-29", true));
+        assertEquals(LogTimestamp.NONE, LogTimestamp.parseArgument("yesterday", false));
+    }
+
+    @Test
+    public void formatsToTheSecond() {
+        assertEquals("2018-05-01 14:30:15", LogTimestamp.format(millis("2018-05-01T14:30:15.999")));
+        assertNull(LogTimestamp.format(LogTimestamp.NONE));
+    }
+
+    private static long millis(String isoLocal) {
+        return LocalDateTime.parse(isoLocal).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
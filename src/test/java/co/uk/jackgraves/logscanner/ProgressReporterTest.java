@@ -0,0 +1,50 @@
+package co.uk.jackgraves.logscanner;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.*;
+
+public class ProgressReporterTest {
+    @Test
+    public void reportsProgressThenClearsTheLine() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true, "UTF-8");
+        String progress;
+        try (ProgressReporter reporter = new ProgressReporter(4 * 1024 * 1024, out)) {
+            reporter.add(1024 * 1024, 5000);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!(progress = output.toString("UTF-8")).contains("%") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        }
+        assertTrue(progress, progress.contains(LogScanner.SPACING + "25% ("));
+        assertTrue(progress, progress.contains(" lines/s, "));
+        assertTrue(progress, progress.contains(" left)"));
+
+        String written = output.toString("UTF-8");
+        String last = written.substring(written.lastIndexOf('\r', written.length() - 2));
+        assertTrue(written, last.length() > 2);
+        assertEquals(written, "", last.trim());
+        assertTrue(written, written.endsWith("\r"));
+    }
+
+    @Test
+    public void printsNothingWithoutATerminal() throws Exception {
+        PrintStream console = System.out;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true, "UTF-8"));
+        try {
+            // The tests never run with a console attached
+            try (ProgressReporter reporter = ProgressReporter.start(100)) {
+                reporter.add(50, 10);
+                Thread.sleep(600);
+            }
+        } finally {
+            System.setOut(console);
+        }
+        assertEquals("", output.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,223 @@
+package co.uk.jackgraves.logscanner;
+
+import co.uk.jackgraves.logscanner.regex.DefinitionMatcher;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class ScanServerTest {
+    private static final String LOG = "2018-05-01 10:00:00,000 INFO started\n"
+            + "2018-05-01 10:00:01,000 ERROR java.lang.OutOfMemoryError: Java heap space\n"
+            + "    at com.example.Cache.grow(Cache.java:42)\n"
+            + "2018-05-01 10:00:02,000 WARN connection pool 7 exhausted\n"
+            + "2018-05-01 10:00:03,000 ERROR java.lang.OutOfMemoryError: Metaspace\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ScanServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void scansPostedLog() throws IOException {
+        start(new DefinitionMatcher(LogScannerTest.definitions()));
+        Response response = post("/scan?def=jira-core", LOG.getBytes(StandardCharsets.UTF_8));
+        assertEquals(200, response.status);
+        assertEquals("{\"definitions\":\"jira-core\",\"lines\":5,\"millis\":0,\"problems\":["
+                + "{\"url\":\"https://example.com/oom\",\"hits\":2,"
+                + "\"first\":{\"time\":\"2018-05-01 10:00:01\",\"source\":null,\"line\":2},"
+                + "\"last\":{\"time\":\"2018-05-01 10:00:03\",\"source\":null,\"line\":5}},"
+                + "{\"url\":\"https://example.com/pool\",\"hits\":1,"
+                + "\"first\":{\"time\":\"2018-05-01 10:00:02\",\"source\":null,\"line\":4},"
+                + "\"last\":{\"time\":\"2018-05-01 10:00:02\",\"source\":null,\"line\":4}}],"
+                + "\"timeouts\":[]}", withoutMillis(response.body));
+    }
+
+    @Test
+    public void gzipBodyGivesTheSameResults() throws IOException {
+        start(new DefinitionMatcher(LogScannerTest.definitions()));
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(LOG.getBytes(StandardCharsets.UTF_8));
+        }
+        Response plain = post("/scan?verbose=true", LOG.getBytes(StandardCharsets.UTF_8));
+        Response compressed = post("/scan?verbose=true", gzipped.toByteArray());
+        assertEquals(200, compressed.status);
+        assertTrue(compressed.body.contains("\"occurrences\":[{"));
+        assertEquals(withoutMillis(plain.body), withoutMillis(compressed.body));
+    }
+
+    @Test
+    public void eventsJoinContinuationLines() throws IOException {
+        Map<String, Pattern> definitions = new LinkedHashMap<>();
+        definitions.put("https://example.com/cache", Pattern.compile("OutOfMemoryError.*\\n.*Cache\\.grow"));
+        start(new DefinitionMatcher(definitions));
+        assertFalse(post("/scan", LOG.getBytes(StandardCharsets.UTF_8)).body.contains("example.com/cache"));
+        assertTrue(post("/scan?events=true", LOG.getBytes(StandardCharsets.UTF_8)).body.contains("\"hits\":1"));
+    }
+
+    @Test
+    public void scansFilesTheServerCanRead() throws IOException {
+        start(new DefinitionMatcher(LogScannerTest.definitions()));
+        File log = folder.newFile("atlassian-jira.log");
+        Files.write(log.toPath(), LOG.getBytes(StandardCharsets.UTF_8));
+        Response response = get("/scan?path=" + URLEncoder.encode(log.getPath(), "UTF-8"));
+        assertEquals(200, response.status);
+        assertEquals(withoutMillis(post("/scan", LOG.getBytes(StandardCharsets.UTF_8)).body), withoutMillis(response.body));
+        assertEquals(withoutMillis(post("/scan?events=true", LOG.getBytes(StandardCharsets.UTF_8)).body),
+                withoutMillis(get("/scan?events=true&path=" + URLEncoder.encode(log.getPath(), "UTF-8")).body));
+        assertEquals(404, get("/scan?path=" + URLEncoder.encode(new File(folder.getRoot(), "missing.log").getPath(), "UTF-8")).status);
+    }
+
+    @Test
+    public void unknownDefinitionsAreNotFound() throws IOException {
+        start(new DefinitionMatcher(LogScannerTest.definitions()));
+        Response response = post("/scan?def=confluence", LOG.getBytes(StandardCharsets.UTF_8));
+        assertEquals(404, response.status);
+        assertEquals("close", response.connection);
+        assertEquals("{\"error\":\"Unknown definitions: confluence (loaded: jira-core)\"}", response.body);
+    }
+
+    @Test
+    public void otherMethodsAreNotAllowed() throws IOException {
+        start(new DefinitionMatcher(LogScannerTest.definitions()));
+        assertEquals(405, get("/scan").status);
+        Response response = request("PUT", "/scan", LOG.getBytes(StandardCharsets.UTF_8));
+        assertEquals(405, response.status);
+        assertEquals("close", response.connection);
+    }
+
+    @Test
+    public void fullQueueTurnsRequestsAway() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Holds every scan on its first line until released
+        DefinitionMatcher blocking = new DefinitionMatcher(LogScannerTest.definitions()) {
+            @Override
+            public void match(CharSequence line, Consumer<String> onMatch, Consumer<String> onTimeout) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.match(line, onMatch, onTimeout);
+            }
+        };
+        server = new ScanServer(0, singleDefinition(blocking), false, false, 1);
+        server.start();
+        ExecutorService clients = Executors.newCachedThreadPool();
+        try {
+            List<Future<Response>> accepted = new ArrayList<>();
+            Response rejected = null;
+            // One scan running and four queued fill the server; the sixth request at the latest is turned away
+            for (int i = 0; i < 20 && rejected == null; i++) {
+                Future<Response> response = clients.submit(() -> post("/scan", LOG.getBytes(StandardCharsets.UTF_8)));
+                try {
+                    rejected = response.get(300, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    accepted.add(response);
+                }
+            }
+            assertNotNull(rejected);
+            assertEquals(503, rejected.status);
+            assertEquals("1", rejected.retryAfter);
+            assertEquals("{\"error\":\"All workers are busy\"}", rejected.body);
+            assertEquals(5, accepted.size());
+
+            release.countDown();
+            for (Future<Response> response : accepted) {
+                assertEquals(200, response.get(10, TimeUnit.SECONDS).status);
+            }
+        } finally {
+            release.countDown();
+            clients.shutdownNow();
+        }
+    }
+
+    private void start(DefinitionMatcher matcher) throws IOException {
+        server = new ScanServer(0, singleDefinition(matcher), false, false);
+        server.start();
+    }
+
+    private static Map<String, DefinitionMatcher> singleDefinition(DefinitionMatcher matcher) {
+        Map<String, DefinitionMatcher> definitions = new LinkedHashMap<>();
+        definitions.put("jira-core", matcher);
+        return definitions;
+    }
+
+    private Response get(String path) throws IOException {
+        return request("GET", path, null);
+    }
+
+    private Response post(String path, byte[] body) throws IOException {
+        return request("POST", path, body);
+    }
+
+    private Response request(String method, String path, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        Response response = new Response();
+        response.status = connection.getResponseCode();
+        response.connection = connection.getHeaderField("Connection");
+        response.retryAfter = connection.getHeaderField("Retry-After");
+        try (InputStream in = response.status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int count; (count = in.read(buffer)) > 0; ) {
+                read.write(buffer, 0, count);
+            }
+            response.body = new String(read.toByteArray(), StandardCharsets.UTF_8);
+        }
+        return response;
+    }
+
+    private static String withoutMillis(String json) {
+        return json.replaceFirst("\"millis\":\\d+", "\"millis\":0");
+    }
+
+    private static class Response {
+        int status;
+        String connection;
+        String retryAfter;
+        String body;
+    }
+}
@@ -0,0 +1,108 @@
+package co.uk.jackgraves.logscanner.io;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EventAssemblerTest {
+    private final List<String> events = new ArrayList<>();
+    private final List<Long> lineNumbers = new ArrayList<>();
+    private final EventAssembler assembler = new EventAssembler(line -> line.startsWith("2018-"), (event, lineNumber) -> {
+        events.add(event);
+        lineNumbers.add(lineNumber);
+    });
+
+    @Test
+    public void recordStartsOpenNewEvents() {
+        assembler.add("2018-05-01 10:00:00 ERROR boom", 1);
+        assembler.add("    at com.example.Foo(Foo.java:12)", 2);
+        assembler.add("    at com.example.Bar(Bar.java:34)", 3);
+        assembler.add("2018-05-01 10:00:01 INFO fine", 4);
+        assembler.add("2018-05-01 10:00:02 INFO also fine", 5);
+        assembler.flush();
+        assertEquals(Arrays.asList(
+                "2018-05-01 10:00:00 ERROR boom\n    at com.example.Foo(Foo.java:12)\n    at com.example.Bar(Bar.java:34)",
+                "2018-05-01 10:00:01 INFO fine",
+                "2018-05-01 10:00:02 INFO also fine"), events);
+        assertEquals(Arrays.asList(1L, 4L, 5L), lineNumbers);
+    }
+
+    @Test
+    public void leadingContinuationLinesFormTheirOwnEvent() {
+        assembler.add("    at com.example.Foo(Foo.java:12)", 7);
+        assembler.add("Caused by: java.io.IOException", 8);
+        assembler.add("2018-05-01 10:00:00 ERROR boom", 9);
+        assembler.flush();
+        assertEquals(Arrays.asList("    at com.example.Foo(Foo.java:12)\nCaused by: java.io.IOException",
+                "2018-05-01 10:00:00 ERROR boom"), events);
+        assertEquals(Arrays.asList(7L, 9L), lineNumbers);
+    }
+
+    @Test
+    public void flushHandsOnOnlyOnce() {
+        assembler.flush();
+        assertTrue(events.isEmpty());
+        assembler.add("2018-05-01 10:00:00 ERROR boom", 1);
+        assertTrue(events.isEmpty());
+        assembler.flush();
+        assembler.flush();
+        assertEquals(Arrays.asList("2018-05-01 10:00:00 ERROR boom"), events);
+    }
+
+    @Test
+    public void eventsAreCappedInLines() {
+        assembler.add("2018-05-01 10:00:00 ERROR boom", 1);
+        int frames = EventAssembler.MAX_LINES * 2 + 10;
+        for (int i = 0; i < frames; i++) {
+            assembler.add("    at frame " + i, i + 2);
+        }
+        assembler.flush();
+        assertEquals(3, events.size());
+        assertEquals(EventAssembler.MAX_LINES, lines(events.get(0)));
+        assertEquals(EventAssembler.MAX_LINES, lines(events.get(1)));
+        assertEquals(frames + 1 - 2 * EventAssembler.MAX_LINES, lines(events.get(2)));
+        assertEquals(Arrays.asList(1L, 1L + EventAssembler.MAX_LINES, 1L + 2 * EventAssembler.MAX_LINES), lineNumbers);
+        assertTrue(events.get(1).startsWith("    at frame " + (EventAssembler.MAX_LINES - 1) + "\n"));
+    }
+
+    @Test
+    public void eventsAreCappedInCharacters() {
+        char[] fill = new char[999];
+        Arrays.fill(fill, 'x');
+        String frame = "    at " + new String(fill);
+        assembler.add("2018-05-01 10:00:00 ERROR boom", 1);
+        for (int i = 0; i < 200; i++) {
+            assembler.add(frame, i + 2);
+        }
+        assembler.flush();
+        assertTrue(events.size() > 1);
+        int total = 0;
+        for (String event : events) {
+            assertTrue(event.length() <= EventAssembler.MAX_CHARS);
+            total += lines(event);
+        }
+        assertEquals(201, total);
+        assertTrue(events.get(0).length() > EventAssembler.MAX_CHARS - frame.length() - 1);
+        assertEquals(1L + lines(events.get(0)), (long) lineNumbers.get(1));
+    }
+
+    @Test
+    public void overlongSingleLineIsPassedOnWhole() {
+        char[] fill = new char[EventAssembler.MAX_CHARS * 2];
+        Arrays.fill(fill, 'x');
+        String line = "2018-05-01 10:00:00 " + new String(fill);
+        assembler.add(line, 1);
+        assembler.add("    at com.example.Foo(Foo.java:12)", 2);
+        assembler.flush();
+        assertEquals(Arrays.asList(line, "    at com.example.Foo(Foo.java:12)"), events);
+        assertSame(line, events.get(0));
+    }
+
+    private static int lines(String event) {
+        return event.split("\n", -1).length;
+    }
+}
@@ -0,0 +1,99 @@
+package co.uk.jackgraves.logscanner.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LineBatchReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void handsOutFullBatchesThenTheRest() throws IOException {
+        int count = LineBatchReader.BATCH_SIZE * 2 + 10;
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        File log = write(text.toString());
+        List<Integer> sizes = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        try (LineBatchReader reader = new LineBatchReader(log.getPath(), 0, log.length(), 2)) {
+            List<String> batch;
+            while ((batch = reader.next()) != null) {
+                sizes.add(batch.size());
+                lines.addAll(batch);
+            }
+            assertEquals(log.length(), reader.getPosition());
+            assertEquals(log.length(), reader.getSize());
+        }
+        assertEquals(Arrays.asList(LineBatchReader.BATCH_SIZE, LineBatchReader.BATCH_SIZE, 10), sizes);
+        assertEquals(count, lines.size());
+        assertEquals("line 0", lines.get(0));
+        assertEquals("line " + (count - 1), lines.get(count - 1));
+    }
+
+    @Test
+    public void endOfFileIsReportedEveryTime() throws IOException {
+        File log = write("only\n");
+        try (LineBatchReader reader = new LineBatchReader(log.getPath())) {
+            assertEquals(Arrays.asList("only"), reader.next());
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+        try (LineBatchReader reader = new LineBatchReader(write("").getPath())) {
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void lastLineWithoutNewlineAndCrLf() throws IOException {
+        File log = write("first\r\nsecond\r\nthird");
+        try (LineBatchReader reader = new LineBatchReader(log.getPath())) {
+            assertEquals(Arrays.asList("first", "second", "third"), reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void readsOnlyTheGivenRange() throws IOException {
+        String text = "one\ntwo\nthree\nfour\n";
+        File log = write(text);
+        int start = text.indexOf("two");
+        int end = text.indexOf("four");
+        try (LineBatchReader reader = new LineBatchReader(log.getPath(), start, end)) {
+            assertEquals(end - start, reader.getSize());
+            assertEquals(Arrays.asList("two", "three"), reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    public void decodesUtf8WhateverTheDefaultCharset() throws IOException {
+        String text = "2018-05-01 10:00:00,000 ERROR Datei nicht gefunden: \u00FCbersicht.txt\n"
+                + "\u65E5\u672C\u8A9E\u306E\u30ED\u30B0 \uD83D\uDE00\n"
+                + "caf\u00E9 \u2013 na\u00EFve\n";
+        File log = folder.newFile();
+        Files.write(log.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        try (LineBatchReader reader = new LineBatchReader(log.getPath())) {
+            assertEquals(Arrays.asList(text.split("\n")), reader.next());
+        }
+    }
+
+    private File write(String text) throws IOException {
+        File log = folder.newFile();
+        Files.write(log.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return log;
+    }
+}
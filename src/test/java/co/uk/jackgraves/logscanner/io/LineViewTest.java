@@ -0,0 +1,71 @@
+package co.uk.jackgraves.logscanner.io;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LineViewTest {
+    private final LineView view = new LineView();
+
+    @Test
+    public void decodesLikeNewString() {
+        byte[][] lines = {
+                new byte[0],
+                utf8("2018-05-01 10:00:00,000 ERROR plain ASCII"),
+                utf8("caf\u00e9 \u00fcberlauf \u20ac \ud83d\ude00 \u4e2d\u6587"),
+                {'a', (byte) 0xc3},
+                {'a', (byte) 0x80, 'b'},
+                {(byte) 0xc0, (byte) 0x80, 'c'},
+                {(byte) 0xed, (byte) 0xa0, (byte) 0x80, 'd'},
+                {(byte) 0xf0, (byte) 0x9f, (byte) 0x98, 'e'},
+                {(byte) 0xff, (byte) 0xfe, 'f'},
+        };
+        for (byte[] line : lines) {
+            String expected = new String(line, StandardCharsets.UTF_8);
+            assertEquals(expected, view.decode(line, 0, line.length).toString());
+            assertEquals(expected.length(), view.length());
+        }
+    }
+
+    @Test
+    public void decodesOnlyTheGivenRange() {
+        byte[] bytes = utf8("xx\u00e9t\u00e9yy");
+        assertEquals("\u00e9t\u00e9", view.decode(bytes, 2, bytes.length - 4).toString());
+    }
+
+    @Test
+    public void reusesItselfForEveryLine() {
+        byte[] longLine = new byte[1000];
+        Arrays.fill(longLine, (byte) 'x');
+        LineView first = view.decode(longLine, 0, longLine.length);
+        assertEquals(1000, first.length());
+        LineView second = view.decode(utf8("short"), 0, 5);
+        assertSame(first, second);
+        assertEquals(5, second.length());
+        assertEquals('t', second.charAt(4));
+        try {
+            second.charAt(5);
+            fail("read past the end of the line");
+        } catch (IndexOutOfBoundsException expected) {
+            // the chars of the longer line are still in the array but not part of this one
+        }
+    }
+
+    @Test
+    public void toStringCopiesOutOnce() {
+        view.decode(utf8("first line"), 0, 10);
+        String copy = view.toString();
+        assertSame(copy, view.toString());
+        assertEquals("line", view.subSequence(6, 10));
+        view.decode(utf8("other text"), 0, 10);
+        assertEquals("first line", copy);
+        assertEquals("other text", view.toString());
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,68 @@
+package co.uk.jackgraves.logscanner.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class LogFilesTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void singleFileIsReturnedAsIs() throws IOException {
+        File log = file("atlassian-jira.log", 0);
+        assertEquals(Arrays.asList(log), LogFiles.resolve(log.getPath()));
+    }
+
+    @Test
+    public void directoryIsWalkedOldestFirst() throws IOException {
+        File current = file("atlassian-jira.log", 3000);
+        File second = file("atlassian-jira.log.1", 2000);
+        File oldest = file("atlassian-jira.log.2", 1000);
+        File nested = file("archive/atlassian-jira.log.3", 500);
+        folder.newFolder("empty");
+        assertEquals(Arrays.asList(nested, oldest, second, current), LogFiles.resolve(folder.getRoot().getPath()));
+    }
+
+    @Test
+    public void sameTimeIsOrderedByPath() throws IOException {
+        File b = file("b.log", 1000);
+        File a = file("a.log", 1000);
+        assertEquals(Arrays.asList(a, b), LogFiles.resolve(folder.getRoot().getPath()));
+    }
+
+    @Test
+    public void globMatchesBelowItsDirectory() throws IOException {
+        File current = file("logs/atlassian-jira.log", 3000);
+        File rotated = file("logs/atlassian-jira.log.1", 2000);
+        file("logs/atlassian-jira-security.log", 1000);
+        file("logs/sub/atlassian-jira.log.2", 1000);
+        file("atlassian-jira.log.9", 1000);
+        String logs = new File(folder.getRoot(), "logs").getPath();
+        assertEquals(Arrays.asList(rotated, current), LogFiles.resolve(logs + File.separator + "atlassian-jira.log*"));
+        assertEquals(Arrays.asList(rotated), LogFiles.resolve(logs + File.separator + "atlassian-jira.log.[0-9]"));
+        assertEquals(4, LogFiles.resolve(logs + File.separator + "**.log*").size());
+    }
+
+    @Test
+    public void nothingMatchingGivesAnEmptyList() throws IOException {
+        assertEquals(new ArrayList<File>(), LogFiles.resolve(new File(folder.getRoot(), "missing.log").getPath()));
+        assertEquals(new ArrayList<File>(), LogFiles.resolve(new File(folder.getRoot(), "missing/*.log").getPath()));
+        assertEquals(new ArrayList<File>(), LogFiles.resolve(new File(folder.getRoot(), "*.log").getPath()));
+    }
+
+    private File file(String name, long modifiedSeconds) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+        assertTrue(file.setLastModified(modifiedSeconds * 1000));
+        return file;
+    }
+}
@@ -0,0 +1,140 @@
+package co.uk.jackgraves.logscanner.io;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LogFollowerTest {
+    private static final long POLL_MILLIS = 5;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final BlockingQueue<String> seen = new LinkedBlockingQueue<>();
+    private LogFollower follower;
+    private Thread thread;
+
+    @After
+    public void tearDown() throws Exception {
+        if (follower != null) {
+            follower.close();
+            thread.join(5000);
+        }
+    }
+
+    @Test
+    public void readsAppendedLines() throws Exception {
+        File log = log("first\nsecond\n");
+        follow(log, log.length(), 2);
+        assertEquals("idle", next());
+        append(log, "third\r\nfou");
+        assertEquals("3 third", nextLine());
+        append(log, "rth\n");
+        assertEquals("4 fourth", nextLine());
+    }
+
+    @Test
+    public void startInsideALineSkipsToTheNextLine() throws Exception {
+        File log = log("first\nsec");
+        follow(log, log.length(), 2);
+        append(log, "ond\nthird\n");
+        assertEquals("3 third", nextLine());
+    }
+
+    @Test
+    public void followsTheNewFileAfterRotation() throws Exception {
+        File log = log("first\n");
+        follow(log, log.length(), 1);
+        append(log, "second\n");
+        assertEquals("2 second", nextLine());
+        assertTrue(log.renameTo(new File(folder.getRoot(), "app.log.1")));
+        log("new first\nnew second\n");
+        assertEquals("rotated", nextNotIdle());
+        assertEquals("1 new first", nextLine());
+        assertEquals("2 new second", nextLine());
+    }
+
+    @Test
+    public void restartsFromTheBeginningAfterTruncation() throws Exception {
+        File log = log("first\nsecond\nthird\n");
+        follow(log, log.length(), 3);
+        assertEquals("idle", next());
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(0);
+        }
+        assertEquals("rotated", nextNotIdle());
+        append(log, "again\n");
+        assertEquals("1 again", nextLine());
+    }
+
+    private File log(String content) throws IOException {
+        File log = new File(folder.getRoot(), "app.log");
+        Files.write(log.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return log;
+    }
+
+    private static void append(File log, String content) throws IOException {
+        Files.write(log.toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private void follow(File log, long offset, long lineNumber) throws IOException {
+        follower = new LogFollower(log.getPath(), offset, lineNumber, POLL_MILLIS);
+        thread = new Thread(() -> {
+            try {
+                follower.follow(new LogFollower.Listener() {
+                    @Override
+                    public void line(String line, long number) {
+                        seen.add(number + " " + line);
+                    }
+
+                    @Override
+                    public void idle() {
+                        seen.add("idle");
+                    }
+
+                    @Override
+                    public void rotated() {
+                        seen.add("rotated");
+                    }
+                });
+            } catch (IOException e) {
+                // Closing the follower closes the channel under it
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private String next() throws InterruptedException {
+        String event = seen.poll(5, TimeUnit.SECONDS);
+        assertNotNull("nothing happened", event);
+        return event;
+    }
+
+    private String nextNotIdle() throws InterruptedException {
+        String event = next();
+        while (event.equals("idle")) {
+            event = next();
+        }
+        return event;
+    }
+
+    private String nextLine() throws InterruptedException {
+        String event = nextNotIdle();
+        assertNotEquals("rotated", event);
+        return event;
+    }
+}
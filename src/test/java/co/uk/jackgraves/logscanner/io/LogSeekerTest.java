@@ -0,0 +1,111 @@
+package co.uk.jackgraves.logscanner.io;
+
+import co.uk.jackgraves.logscanner.LogTimestamp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class LogSeekerTest {
+    private static final String LOG =
+            "2018-05-01 10:00:00,000 INFO started\n" +
+            "2018-05-01 10:00:05,000 ERROR failed\n" +
+            "java.lang.IllegalStateException: broken\n" +
+            "    at com.example.Foo.bar(Foo.java:12)\n" +
+            "2018-05-01 10:00:05,500 INFO retrying\n" +
+            "2018-05-01 10:01:00,000 INFO recovered\n" +
+            "2018-05-01 10:02:00,000 WARN slow\n" +
+            "    continued\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsFirstRecordAtOrAfterTime() throws IOException {
+        File log = write(LOG);
+        try (LogSeeker seeker = seeker(log)) {
+            assertEquals(LOG.indexOf("2018-05-01 10:00:05,000"), seeker.seek(time("2018-05-01 10:00:01")));
+            assertEquals(LOG.indexOf("2018-05-01 10:00:05,000"), seeker.seek(time("2018-05-01 10:00:05")));
+            assertEquals(LOG.indexOf("2018-05-01 10:00:05,500"), seeker.seek(time("2018-05-01 10:00:05") + 1));
+            assertEquals(LOG.indexOf("2018-05-01 10:01:00"), seeker.seek(time("2018-05-01 10:00:30")));
+        }
+    }
+
+    @Test
+    public void windowEdges() throws IOException {
+        File log = write(LOG);
+        try (LogSeeker seeker = seeker(log)) {
+            assertEquals(0, seeker.seek(time("2018-04-30 00:00:00")));
+            assertEquals(0, seeker.seek(time("2018-05-01 10:00:00")));
+            assertEquals(LOG.indexOf("2018-05-01 10:02:00"), seeker.seek(time("2018-05-01 10:02:00")));
+            assertEquals(LOG.length(), seeker.seek(time("2018-05-01 10:02:00") + 1));
+            assertEquals(LOG.length(), seeker.seek(time("2019-01-01 00:00:00")));
+        }
+    }
+
+    @Test
+    public void alwaysLandsOnRecordBoundary() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            text.append(String.format("2018-05-01 %02d:%02d:%02d,000 INFO line %d%n", i / 3600, i / 60 % 60, i % 60, i));
+            for (int j = 0; j < i % 4; j++) {
+                text.append("    at com.example.Frame").append(j).append("(Frame.java:").append(i).append(")\n");
+            }
+        }
+        String content = text.toString();
+        File log = write(content);
+        try (LogSeeker seeker = seeker(log)) {
+            for (int second = -1; second <= 2001; second += 7) {
+                long target = time("2018-05-01 00:00:00") + second * 1000L;
+                long offset = seeker.seek(target);
+                if (offset == content.length()) {
+                    assertTrue(second >= 2000);
+                    continue;
+                }
+                assertTrue(offset == 0 || content.charAt((int) offset - 1) == '\n');
+                assertTrue(LogTimestamp.parseAt(content, (int) offset) >= target);
+                int previous = content.lastIndexOf("\n2018", (int) offset - 2);
+                if (offset > 0) {
+                    assertTrue(LogTimestamp.parseAt(content, Math.max(previous + 1, 0)) < target);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void lastLineWithoutNewline() throws IOException {
+        String content = "2018-05-01 10:00:00,000 a\n2018-05-01 10:00:01,000 b";
+        File log = write(content);
+        try (LogSeeker seeker = seeker(log)) {
+            assertEquals(content.indexOf("2018-05-01 10:00:01"), seeker.seek(time("2018-05-01 10:00:01")));
+            assertEquals(content.length(), seeker.seek(time("2018-05-01 10:00:02")));
+        }
+    }
+
+    @Test
+    public void emptyLog() throws IOException {
+        try (LogSeeker seeker = seeker(write(""))) {
+            assertEquals(0, seeker.seek(time("2018-05-01 10:00:00")));
+        }
+    }
+
+    private File write(String content) throws IOException {
+        File log = folder.newFile();
+        Files.write(log.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return log;
+    }
+
+    private static LogSeeker seeker(File log) throws IOException {
+        return new LogSeeker(log.getPath(), line -> LogTimestamp.parseAt(line, 0));
+    }
+
+    private static long time(String text) {
+        return LogTimestamp.parseArgument(text, false);
+    }
+}
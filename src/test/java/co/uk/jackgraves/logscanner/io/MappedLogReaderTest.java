@@ -0,0 +1,139 @@
+package co.uk.jackgraves.logscanner.io;
+
+import co.uk.jackgraves.logscanner.LogTimestamp;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class MappedLogReaderTest {
+    private static final Predicate<String> STARTS_RECORD = line -> LogTimestamp.parseAt(line, 0) != LogTimestamp.NONE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void chunksEndOnLineBoundariesAndCoverTheFile() throws IOException {
+        String text = log(60000);
+        File file = write(text);
+        try (MappedLogReader reader = new MappedLogReader(file.getPath())) {
+            List<MappedLogReader.Chunk> chunks = reader.split(4);
+            assertTrue(chunks.size() > 1 && chunks.size() <= 4);
+            assertContiguous(chunks, 0, text.length());
+            for (MappedLogReader.Chunk chunk : chunks) {
+                assertEquals('\n', text.charAt((int) (chunk.getStart() + chunk.length() - 1)));
+            }
+            assertEquals(Arrays.asList(text.split("\n")), lines(chunks));
+        }
+    }
+
+    @Test
+    public void recordBoundariesKeepEventsTogether() throws IOException {
+        String text = log(60000);
+        File file = write(text);
+        try (MappedLogReader reader = new MappedLogReader(file.getPath())) {
+            List<MappedLogReader.Chunk> chunks = reader.split(8, STARTS_RECORD);
+            assertTrue(chunks.size() > 1);
+            assertContiguous(chunks, 0, text.length());
+            for (MappedLogReader.Chunk chunk : chunks) {
+                int start = (int) chunk.getStart();
+                assertTrue(start == 0 || text.charAt(start - 1) == '\n');
+                assertTrue(text.substring(start, start + 30), STARTS_RECORD.test(text.substring(start, start + 30)));
+            }
+            assertEquals(Arrays.asList(text.split("\n")), lines(chunks));
+        }
+    }
+
+    @Test
+    public void smallFileIsOneChunk() throws IOException {
+        File file = write("a\r\nb\nc");
+        try (MappedLogReader reader = new MappedLogReader(file.getPath())) {
+            List<MappedLogReader.Chunk> chunks = reader.split(16);
+            assertEquals(1, chunks.size());
+            assertEquals(Arrays.asList("a", "b", "c"), lines(chunks));
+            assertEquals(3, chunks.get(0).forEachLine((line, index) -> { }));
+        }
+    }
+
+    @Test
+    public void splitsOnlyTheGivenRange() throws IOException {
+        String text = log(60000);
+        File file = write(text);
+        int start = text.indexOf("\n", text.length() / 3) + 1;
+        int end = text.indexOf("\n", 2 * text.length() / 3) + 1;
+        try (MappedLogReader reader = new MappedLogReader(file.getPath(), start, end)) {
+            assertEquals(end - start, reader.getSize());
+            List<MappedLogReader.Chunk> chunks = reader.split(4);
+            assertContiguous(chunks, start, end);
+            assertEquals(Arrays.asList(text.substring(start, end).split("\n")), lines(chunks));
+        }
+    }
+
+    @Test
+    public void skippedLinesKeepTheirIndex() throws IOException {
+        File file = write("keep 0\nskip 1\nkeep 2\n");
+        List<String> seen = new ArrayList<>();
+        try (MappedLogReader reader = new MappedLogReader(file.getPath())) {
+            long count = reader.split(1).get(0).forEachLine((utf8, offset, length) -> utf8[offset] == 'k',
+                    (line, index) -> seen.add(index + ":" + line));
+            assertEquals(3, count);
+        }
+        assertEquals(Arrays.asList("0:keep 0", "2:keep 2"), seen);
+    }
+
+    /**
+     * About 100 bytes per record; every third record carries a two-frame stack trace.
+     */
+    private static String log(int records) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < records; i++) {
+            text.append(String.format("2018-05-01 %02d:%02d:%02d,%03d ERROR [http-nio-8080-exec-%d] record %d%n",
+                    i / 3600000 % 24, i / 60000 % 60, i / 1000 % 60, i % 1000, i % 16, i));
+            if (i % 3 == 0) {
+                text.append("java.lang.IllegalStateException: failed ").append(i).append('\n');
+                text.append("    at com.example.Service.call(Service.java:").append(i % 500).append(")\n");
+            }
+        }
+        return text.toString();
+    }
+
+    private static void assertContiguous(List<MappedLogReader.Chunk> chunks, long start, long end) {
+        long position = start;
+        for (MappedLogReader.Chunk chunk : chunks) {
+            assertEquals(position, chunk.getStart());
+            assertTrue(chunk.length() > 0);
+            position += chunk.length();
+        }
+        assertEquals(end, position);
+    }
+
+    private static List<String> lines(List<MappedLogReader.Chunk> chunks) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (MappedLogReader.Chunk chunk : chunks) {
+            int first = lines.size();
+            // Indexes count from the start of each chunk
+            long count = chunk.forEachLine((line, index) -> {
+                assertEquals(lines.size() - first, index);
+                lines.add(line);
+            });
+            assertEquals(lines.size() - first, count);
+        }
+        return lines;
+    }
+
+    private File write(String text) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
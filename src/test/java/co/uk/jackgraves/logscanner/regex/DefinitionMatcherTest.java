@@ -0,0 +1,89 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class DefinitionMatcherTest {
+    private static final String PATHOLOGICAL = "https://example.com/pathological";
+
+    @Test
+    public void pathologicalPatternTimesOutAndOthersStillMatch() {
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions(), DefinitionMatcher.Engine.REGEX, false, 200);
+        String line = "2018-05-01 10:00:00,000 ERROR disk full " + repeat('a', 64);
+        List<String> found = new ArrayList<>();
+        List<String> timedOut = new ArrayList<>();
+        long started = System.nanoTime();
+        matcher.match(line, found::add, timedOut::add);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertEquals(Collections.singletonList(PATHOLOGICAL), timedOut);
+        Collections.sort(found);
+        assertEquals(Arrays.asList("https://example.com/disk", "https://example.com/error"), found);
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 5000);
+    }
+
+    @Test
+    public void patternWithinBudgetStillMatches() {
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions(), DefinitionMatcher.Engine.REGEX, false, 200);
+        List<String> found = new ArrayList<>();
+        matcher.match(repeat('a', 12) + "x", found::add, url -> fail("timed out: " + url));
+        assertEquals(Collections.singletonList(PATHOLOGICAL), found);
+    }
+
+    @Test
+    public void automatonDoesNotBacktrack() {
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions(), DefinitionMatcher.Engine.DFA, false, 200);
+        List<String> found = new ArrayList<>();
+        matcher.match("ERROR disk full " + repeat('a', 64), found::add, url -> fail("timed out: " + url));
+        Collections.sort(found);
+        assertEquals(Arrays.asList("https://example.com/disk", "https://example.com/error"), found);
+    }
+
+    @Test
+    public void candidatesRunAnywhereFindWhatMatchFinds() throws Exception {
+        String[] lines = {"2018-05-01 10:00:00,000 ERROR disk full", "ERROR java.lang.OutOfMemoryError", "INFO fine",
+                repeat('a', 12) + "x", ""};
+        for (DefinitionMatcher.Engine engine : DefinitionMatcher.Engine.values()) {
+            DefinitionMatcher matcher = new DefinitionMatcher(definitions(), engine, false, 200);
+            for (String line : lines) {
+                List<String> expected = new ArrayList<>();
+                matcher.match(line, expected::add);
+                int[] candidates = matcher.candidates(line);
+                List<String> found = new ArrayList<>();
+                // Run on another thread, as the parallel scan does
+                Thread runner = new Thread(() -> {
+                    for (int candidate : candidates) {
+                        matcher.runCandidate(line, candidate, pattern -> found.add(matcher.getUrl(pattern)), pattern -> fail("timed out"));
+                    }
+                });
+                runner.start();
+                runner.join();
+                assertEquals(engine + " " + line, expected, found);
+            }
+        }
+    }
+
+    private static Map<String, Pattern> definitions() {
+        Map<String, Pattern> definitions = new LinkedHashMap<>();
+        definitions.put("https://example.com/error", Pattern.compile("ERROR"));
+        definitions.put(PATHOLOGICAL, Pattern.compile("(.*a){12}x"));
+        definitions.put("https://example.com/disk", Pattern.compile("disk\\s+full"));
+        definitions.put("https://example.com/oom", Pattern.compile("OutOfMemoryError"));
+        return definitions;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,173 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class LiteralExtractorTest {
+
+    @Test
+    public void plainTextIsOneLiteral() {
+        assertEquals(Arrays.asList("OutOfMemoryError"), LiteralExtractor.extract("OutOfMemoryError"));
+        assertEquals(Arrays.asList("OutOfMemoryError"), LiteralExtractor.extractAll("OutOfMemoryError"));
+    }
+
+    @Test
+    public void alternationGivesOneLiteralPerBranch() {
+        String regex = "Connection refused|Broken pipe|timed out after \\d+ms";
+        assertEquals(Arrays.asList("Connection refused", "Broken pipe", "timed out after "), LiteralExtractor.extract(regex));
+        assertNull(LiteralExtractor.extractAll(regex));
+        assertSound(regex,
+                "java.net.ConnectException: Connection refused",
+                "write failed: Broken pipe",
+                "request timed out after 3000ms",
+                "all good here");
+    }
+
+    @Test
+    public void branchWithoutLiteralDisablesPrefilter() {
+        assertNull(LiteralExtractor.extract("Connection refused|\\d+"));
+        assertNull(LiteralExtractor.extract("Connection refused|ab"));
+    }
+
+    @Test
+    public void nestedAlternationIsNotRequired() {
+        String regex = "Caused by: (Foo|Bar)Exception";
+        assertRequired(regex, "Caused by: ", "Exception");
+        for (List<String> literals : Arrays.asList(LiteralExtractor.extract(regex), LiteralExtractor.extractAll(regex))) {
+            assertFalse(literals.contains("Foo"));
+            assertFalse(literals.contains("Bar"));
+        }
+        assertSound(regex, "Caused by: FooException", "Caused by: BarException", "Caused by: BazException");
+    }
+
+    @Test
+    public void optionalCharactersAreNotRequired() {
+        String regex = "Errors? occurred";
+        assertRequired(regex, "Error", " occurred");
+        assertFalse(LiteralExtractor.extractAll(regex).contains("Errors"));
+        assertSound(regex, "Error occurred", "Errors occurred", "Warning occurred");
+
+        regex = "retrying connection(xx)* to server";
+        assertRequired(regex, "retrying connection", " to server");
+        assertSound(regex, "retrying connection to server", "retrying connectionxxxx to server");
+
+        regex = "disk ful{0,3}l nearly";
+        assertSound(regex, "disk ful nearly", "disk full nearly", "disk fullll nearly");
+        for (String literal : LiteralExtractor.extractAll(regex)) {
+            assertFalse(literal, literal.contains("full"));
+        }
+    }
+
+    @Test
+    public void optionalGroupsAreNotRequired() {
+        String regex = "Deadlock( detected)? in thread pool";
+        assertRequired(regex, "Deadlock", " in thread pool");
+        assertFalse(String.join(",", LiteralExtractor.extractAll(regex)).contains("detected"));
+        assertSound(regex, "Deadlock in thread pool", "Deadlock detected in thread pool");
+    }
+
+    @Test
+    public void escapedCharactersAreLiteral() {
+        String regex = "java\\.lang\\.NullPointerException";
+        assertEquals(Arrays.asList("java.lang.NullPointerException"), LiteralExtractor.extract(regex));
+        assertSound(regex, "Exception in thread \"main\" java.lang.NullPointerException", "javaxlangxNullPointerException");
+
+        regex = "\\Qa+b=c\\E then \\[done\\]";
+        assertSound(regex, "a+b=c then [done]", "aab=c then done");
+    }
+
+    @Test
+    public void escapeSequencesEndTheRun() {
+        String regex = "took \\d+ seconds";
+        assertRequired(regex, "took ", " seconds");
+        for (String literal : LiteralExtractor.extractAll(regex)) {
+            assertFalse(literal, literal.contains("\\"));
+        }
+        assertSound(regex, "took 12 seconds", "took 1 seconds");
+
+        regex = "user\\sname\\bfound";
+        assertSound(regex, "user name found", "user\tname found");
+    }
+
+    @Test
+    public void characterClassesEndTheRun() {
+        String regex = "status=[45]\\d\\d from upstream";
+        assertRequired(regex, "status=", " from upstream");
+        assertSound(regex, "status=404 from upstream", "status=503 from upstream", "status=200 from upstream");
+
+        regex = "level=[^\\]]+] failed";
+        assertSound(regex, "level=ERROR] failed", "level=x] failed");
+    }
+
+    @Test
+    public void inlineFlagsDisablePrefilter() {
+        assertNull(LiteralExtractor.extract("(?i)outofmemoryerror"));
+        assertNull(LiteralExtractor.extractAll("(?i)outofmemoryerror"));
+        assertSound("(?i)outofmemoryerror", "java.lang.OutOfMemoryError", "OUTOFMEMORYERROR");
+        String regex = "Fatal (?i:error) in module";
+        assertSound(regex, "Fatal ERROR in module", "Fatal error in module");
+    }
+
+    @Test
+    public void ahoCorasickFindsEveryOccurrence() {
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+        List<Integer> found = new ArrayList<>();
+        automaton.search("ushers and his", found::add);
+        assertEquals(Arrays.asList(1, 0, 3, 2), found);
+    }
+
+    @Test
+    public void ahoCorasickSearchesBytes() {
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("refused", "pipe"));
+        byte[] line = "xx Connection refused".getBytes();
+        assertTrue(automaton.containsAny(line, 0, line.length));
+        assertFalse(automaton.containsAny(line, 0, line.length - 1));
+        assertFalse(automaton.containsAny("no match".getBytes(), 0, 8));
+    }
+
+    /**
+     * Checks that every literal is one of the expected ones, that at least one was extracted, and that each of them
+     * occurs in a line the regex matches.
+     */
+    private static void assertRequired(String regex, String... expected) {
+        List<String> all = LiteralExtractor.extractAll(regex);
+        assertNotNull(regex, all);
+        for (String literal : all) {
+            assertTrue(regex + " gave " + literal, Arrays.asList(expected).contains(literal));
+        }
+        List<String> one = LiteralExtractor.extract(regex);
+        assertNotNull(regex, one);
+        assertEquals(1, one.size());
+        assertTrue(all.contains(one.get(0)));
+    }
+
+    /**
+     * Checks that no line the regex matches would be filtered out by the prefilter built from its literals.
+     */
+    private static void assertSound(String regex, String... lines) {
+        Pattern pattern = Pattern.compile(regex);
+        List<String> any = LiteralExtractor.extract(regex);
+        List<String> all = LiteralExtractor.extractAll(regex);
+        for (String line : lines) {
+            if (!pattern.matcher(line).find()) {
+                continue;
+            }
+            if (any != null) {
+                assertTrue(regex + " filters out " + line, any.stream().anyMatch(line::contains));
+                byte[] bytes = line.getBytes();
+                assertTrue(regex + " filters out " + line, new AhoCorasick(any).containsAny(bytes, 0, bytes.length));
+            }
+            if (all != null) {
+                for (String literal : all) {
+                    assertTrue(regex + " requires " + literal + " in " + line, line.contains(literal));
+                }
+            }
+        }
+    }
+}
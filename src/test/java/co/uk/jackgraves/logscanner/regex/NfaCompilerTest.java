@@ -0,0 +1,129 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class NfaCompilerTest {
+
+    @Test
+    public void anchors() {
+        assertSameAsRegex("^ERROR", "ERROR at start", "an ERROR later", "");
+        assertSameAsRegex("failed$", "it failed", "failed to start", "it failed\n", "it failed\r\n");
+        assertSameAsRegex("\\Afailed\\z", "failed", "failed\n", "not failed");
+        assertSameAsRegex("done\\Z", "done", "done\n", "done twice");
+        assertSameAsRegex("^$", "", "x", "\n");
+    }
+
+    @Test
+    public void alternation() {
+        assertSameAsRegex("refused|reset|timed out", "Connection refused", "Connection reset by peer",
+                "read timed out", "all fine");
+        assertSameAsRegex("(Foo|Bar)Exception", "FooException", "BarException", "BazException");
+        assertSameAsRegex("a(|b)c", "ac", "abc", "abbc");
+    }
+
+    @Test
+    public void countedRepeats() {
+        assertSameAsRegex("x{3}", "xx", "xxx", "axxxxb");
+        assertSameAsRegex("^a{2,4}$", "a", "aa", "aaaa", "aaaaa");
+        assertSameAsRegex("^(ab){2,}$", "ab", "abab", "ababab", "ababa");
+        assertSameAsRegex("^\\d{1,3}\\.\\d{1,3}$", "1.2", "123.456", "1234.5", "1.");
+        assertSameAsRegex("retry(ing)?", "retry", "retrying", "retr");
+        assertSameAsRegex("a+?b", "ab", "aaab", "b");
+    }
+
+    @Test
+    public void characterClasses() {
+        assertSameAsRegex("status=[45]\\d\\d", "status=404", "status=503", "status=200", "status=4x4");
+        assertSameAsRegex("[^a-z ]+", "abc def", "abc1", "   ");
+        assertSameAsRegex("[\\w.-]+@[\\w.]+", "mail me at john.doe@example.com", "no at sign");
+        assertSameAsRegex("\\s\\S\\W\\D", " a-x", " a-1", "a b c");
+        assertSameAsRegex("[]x]", "]", "x", "y");
+        assertSameAsRegex("a.c", "abc", "a\nc", "a\u2028c");
+        assertSameAsRegex("\\x41\\u0042\\t\\0101", "AB\tA", "AB A");
+    }
+
+    @Test
+    public void caseInsensitiveFlags() {
+        assertSameAsRegex("(?i)outofmemory", "OutOfMemoryError", "OUTOFMEMORY", "out of memory");
+        assertSameAsRegex("Fatal (?i:error) here", "Fatal ERROR here", "FATAL error here", "Fatal eRRoR here");
+        assertSameAsRegex("(?i)[a-c]x", "Bx", "bX", "dx");
+        assertSameAsRegex("(?i)warn(?-i)ING", "WARNING", "warnING", "warning");
+        assertSameAsRegex("(?s)a.c", "a\nc", "abc");
+    }
+
+    @Test
+    public void unsupportedPatternsAreRejected() {
+        NfaCompiler compiler = new NfaCompiler();
+        assertEquals(0, compiler.add("supported"));
+        for (String regex : Arrays.asList("(a)\\1", "foo(?=bar)", "(?<!x)y", "\\bword\\b", "a++", "(?>ab)", "(?m)^x",
+                "$x", "a{100}", "(a*)*", "\\p{Alpha}")) {
+            assertEquals(regex, -1, compiler.add(regex));
+        }
+        assertEquals(1, compiler.add("also supported"));
+        assertEquals(2, compiler.build().patternCount());
+    }
+
+    @Test
+    public void rejectedPatternsFallBackToRegex() {
+        Map<String, Pattern> definitions = new LinkedHashMap<>();
+        definitions.put("backreference", Pattern.compile("(\\w+) \\1 again"));
+        definitions.put("lookahead", Pattern.compile("Exception(?! handled)"));
+        definitions.put("boundary", Pattern.compile("\\bOOM\\b"));
+        definitions.put("literal", Pattern.compile("disk full"));
+        DefinitionMatcher matcher = new DefinitionMatcher(definitions, DefinitionMatcher.Engine.DFA);
+        assertEquals(Arrays.asList("backreference"), matches(matcher, "said it twice twice again"));
+        assertEquals(Arrays.asList(), matches(matcher, "said it once twice again"));
+        assertEquals(Arrays.asList("lookahead"), matches(matcher, "Exception thrown"));
+        assertEquals(Arrays.asList(), matches(matcher, "Exception handled"));
+        assertEquals(Arrays.asList("boundary", "literal"), matches(matcher, "OOM: disk full"));
+        assertEquals(Arrays.asList(), matches(matcher, "ZOOM"));
+    }
+
+    @Test
+    public void combinedPatternsReportEachMatch() {
+        List<String> regexes = Arrays.asList("refused", "^\\[ERROR\\]", "timeout after \\d+ms$", "(?i)fatal");
+        NfaCompiler compiler = new NfaCompiler();
+        for (String regex : regexes) {
+            assertTrue(regex, compiler.add(regex) >= 0);
+        }
+        MultiPatternDfa dfa = new MultiPatternDfa(compiler.build());
+        assertEquals(new TreeSet<>(Arrays.asList(0, 1, 3)), found(dfa, "[ERROR] FATAL: connection refused"));
+        assertEquals(new TreeSet<>(Arrays.asList(2)), found(dfa, "request timeout after 30ms"));
+        assertEquals(new TreeSet<>(), found(dfa, "request timeout after 30ms, retrying"));
+    }
+
+    @Test
+    public void surrogatePairsAreLeftToRegex() {
+        NfaCompiler compiler = new NfaCompiler();
+        compiler.add("x");
+        assertFalse(new MultiPatternDfa(compiler.build()).scan("x \uD83D\uDE00", pattern -> { }));
+    }
+
+    private static void assertSameAsRegex(String regex, String... lines) {
+        NfaCompiler compiler = new NfaCompiler();
+        assertEquals(regex, 0, compiler.add(regex));
+        MultiPatternDfa dfa = new MultiPatternDfa(compiler.build());
+        Pattern pattern = Pattern.compile(regex);
+        for (String line : lines) {
+            assertEquals(regex + " on \"" + line + "\"", pattern.matcher(line).find(), !found(dfa, line).isEmpty());
+        }
+    }
+
+    private static Set<Integer> found(MultiPatternDfa dfa, String line) {
+        Set<Integer> found = new TreeSet<>();
+        assertTrue(dfa.scan(line, found::add));
+        return found;
+    }
+
+    private static List<String> matches(DefinitionMatcher matcher, String line) {
+        List<String> urls = new ArrayList<>();
+        matcher.match(line, urls::add, url -> fail("timed out: " + url));
+        Collections.sort(urls);
+        return urls;
+    }
+}
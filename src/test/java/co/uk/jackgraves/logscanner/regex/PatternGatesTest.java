@@ -0,0 +1,66 @@
+package co.uk.jackgraves.logscanner.regex;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PatternGatesTest {
+    private static final String[][] LITERALS = {{"Exception", "caused"}, null};
+
+    @Test
+    public void admitsEveryLineUntilReviewed() {
+        PatternGates gates = new PatternGates(LITERALS);
+        run(gates, 0, false, 5000, 4095);
+        assertTrue(gates.admits(0, "PKIX path building failed"));
+    }
+
+    @Test
+    public void gatedPatternStillAdmitsLinesWithItsLiterals() {
+        PatternGates gates = new PatternGates(LITERALS);
+        run(gates, 0, false, 5000, 4096);
+        assertFalse(gates.admits(0, "PKIX path building failed"));
+        assertFalse(gates.admits(0, "Exception: PKIX path building failed"));
+        assertTrue(gates.admits(0, "Exception: PKIX path building failed, caused by expiry"));
+        assertTrue(gates.admits(0, new StringBuilder("caused by Exception: PKIX path building failed")));
+    }
+
+    @Test
+    public void cheapOrFrequentPatternsAreNotGated() {
+        PatternGates cheap = new PatternGates(LITERALS);
+        run(cheap, 0, false, 100, 4096);
+        assertTrue(cheap.admits(0, "PKIX path building failed"));
+
+        PatternGates frequent = new PatternGates(LITERALS);
+        run(frequent, 0, true, 5000, 4096);
+        assertTrue(frequent.admits(0, "PKIX path building failed"));
+    }
+
+    @Test
+    public void patternsWithoutOtherLiteralsAreNeverGated() {
+        PatternGates gates = new PatternGates(LITERALS);
+        run(gates, 1, false, 5000, 4096);
+        assertFalse(gates.sample(1));
+        assertTrue(gates.admits(1, "anything"));
+    }
+
+    @Test
+    public void gateThatRarelyRejectsIsRemoved() {
+        PatternGates gates = new PatternGates(LITERALS);
+        run(gates, 0, false, 5000, 4096);
+        for (int i = 0; i < 4096; i++) {
+            gates.line();
+            assertTrue(gates.admits(0, "Exception caused"));
+        }
+        assertTrue(gates.admits(0, "PKIX path building failed"));
+    }
+
+    /**
+     * Records a run of the pattern on every line, timing the sampled ones at the given cost.
+     */
+    private static void run(PatternGates gates, int pattern, boolean hit, long nanos, int lines) {
+        for (int i = 0; i < lines; i++) {
+            gates.line();
+            gates.ran(pattern, hit, gates.sample(pattern) ? nanos : -1);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package co.uk.jackgraves.logscanner.xml;
+
+import org.junit.Test;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DefinitionReaderTest {
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<object-stream>\n"
+            + "    <RegexEntry>\n"
+            + "        <pageName>PKIX</pageName>\n"
+            + "        <regex>PKIX path building failed</regex>\n"
+            + "        <URL>https://confluence.atlassian.com/kb/pkix.html</URL>\n"
+            + "        <Id>1</Id>\n"
+            + "        <sourceID>jira</sourceID>\n"
+            + "    </RegexEntry>\n"
+            + "    <RegexEntry>\n"
+            + "        <regex>java\\.lang\\.OutOfMemoryError: (Java heap space|PermGen) &amp; &lt;more&gt;</regex>\n"
+            + "        <URL>https://confluence.atlassian.com/kb/oom.html</URL>\n"
+            + "        <products><product>jira</product></products>\n"
+            + "        <Id>2</Id>\n"
+            + "    </RegexEntry>\n"
+            + "    <regex>outside of an entry</regex>\n"
+            + "</object-stream>\n";
+
+    @Test
+    public void readsEveryEntryAndItsFields() throws XMLStreamException {
+        List<RegExItem> items = DefinitionReader.read(stream(XML)).regexItems;
+        assertEquals(2, items.size());
+        RegExItem pkix = items.get(0);
+        assertEquals("PKIX", pkix.pageName);
+        assertEquals("PKIX path building failed", pkix.regex);
+        assertEquals("https://confluence.atlassian.com/kb/pkix.html", pkix.URL);
+        assertEquals("1", pkix.Id);
+        assertEquals("jira", pkix.sourceID);
+        RegExItem oom = items.get(1);
+        assertNull(oom.pageName);
+        assertEquals("java\\.lang\\.OutOfMemoryError: (Java heap space|PermGen) & <more>", oom.regex);
+        assertEquals("2", oom.Id);
+        assertNull(oom.sourceID);
+    }
+
+    @Test
+    public void handsOnEntriesAsTheyAreRead() throws XMLStreamException {
+        List<RegExItem> seen = new ArrayList<>();
+        ObjectStream stream = DefinitionReader.read(stream(XML), seen::add);
+        assertEquals(stream.regexItems, seen);
+    }
+
+    @Test
+    public void externalEntitiesAreNotResolved() {
+        String xml = "<?xml version=\"1.0\"?>\n"
+                + "<!DOCTYPE object-stream [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>\n"
+                + "<object-stream><RegexEntry><regex>&secret;</regex></RegexEntry></object-stream>";
+        try {
+            List<RegExItem> items = DefinitionReader.read(stream(xml)).regexItems;
+            assertFalse(items.get(0).regex != null && items.get(0).regex.contains("root:"));
+        } catch (XMLStreamException e) {
+            // Refusing the document is just as good
+        }
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void malformedXmlFails() throws XMLStreamException {
+        DefinitionReader.read(stream("<object-stream><RegexEntry><regex>x</RegexEntry>"));
+    }
+
+    private static ByteArrayInputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}